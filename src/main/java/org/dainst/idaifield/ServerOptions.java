@@ -0,0 +1,38 @@
+package org.dainst.idaifield;
+
+
+public class ServerOptions {
+
+    private int jobThreads = 1;
+    private int queueSize = 16;
+
+
+    /**
+     * @return the maximum number of jobs run at the same time
+     */
+    public int getJobThreads() {
+
+        return jobThreads;
+    }
+
+
+    public void setJobThreads(int jobThreads) {
+
+        this.jobThreads = jobThreads;
+    }
+
+
+    /**
+     * @return the maximum number of jobs waiting to be run. Further jobs are rejected until a job has been started.
+     */
+    public int getQueueSize() {
+
+        return queueSize;
+    }
+
+
+    public void setQueueSize(int queueSize) {
+
+        this.queueSize = queueSize;
+    }
+}
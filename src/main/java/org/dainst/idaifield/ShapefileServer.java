@@ -0,0 +1,151 @@
+package org.dainst.idaifield;
+
+import org.dainst.idaifield.datastore.Datastore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.data.FileDataStoreFinder;
+import org.geotools.referencing.CRS;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Resident mode of the shapefile tool. Reads import and export jobs from the input stream, one JSON object per line,
+ * and writes the result of each job to the output stream as soon as the job has finished. The datastore with its
+ * connection pool, the GeoTools factories and the EPSG database are initialized once and shared by all jobs.
+ * Export jobs using the resource cache of the same project wait for each other, as only one job at a time can
+ * have the cache open.
+ *
+ * Job: { "id": "1", "arguments": ["export", "project", "/path/to/file.zip", "/path/to/temp", "operation"] }
+ *
+ * Result: { "id": "1", "status": "ok" }, { "id": "1", "status": "error", "message": "..." } or, if the job queue is
+ * full, { "id": "1", "status": "rejected", "message": "QUEUE_FULL" }
+ */
+public class ShapefileServer {
+
+    private final Datastore datastore;
+    private final ServerOptions options;
+
+
+    public ShapefileServer(Datastore datastore, ServerOptions options) {
+
+        this.datastore = datastore;
+        this.options = options;
+    }
+
+
+    /**
+     * Runs until the end of the input stream is reached and all accepted jobs have finished.
+     */
+    public void run(InputStream input, PrintStream output) throws Exception {
+
+        warmUp();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(options.getJobThreads(), options.getJobThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(options.getQueueSize()));
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) submit(line, executor, output);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private void submit(String line, ThreadPoolExecutor executor, PrintStream output) {
+
+        JSONObject job;
+        try {
+            job = new JSONObject(line);
+        } catch (JSONException e) {
+            writeResult(output, null, "error", "Invalid job: " + e.getMessage());
+            return;
+        }
+
+        Object id = job.opt("id");
+        JSONArray arguments = job.optJSONArray("arguments");
+        if (arguments == null) {
+            writeResult(output, id, "error", "Invalid job: Missing arguments");
+            return;
+        }
+
+        try {
+            executor.execute(() -> runJob(id, arguments, output));
+        } catch (RejectedExecutionException e) {
+            writeResult(output, id, "rejected", "QUEUE_FULL");
+        }
+    }
+
+
+    /**
+     * Writes a result for every job, also if the job fails with an error like an OutOfMemoryError, so that no
+     * client waits for a result forever.
+     */
+    private void runJob(Object id, JSONArray arguments, PrintStream output) {
+
+        try {
+            String[] jobArguments = new String[arguments.length()];
+            for (int i = 0; i < jobArguments.length; i++) {
+                jobArguments[i] = arguments.getString(i);
+            }
+
+            Map<String, String> jobOptions = new HashMap<>();
+            List<String> parameters = ShapefileTool.extractOptions(jobArguments, jobOptions);
+
+            if (parameters.isEmpty() || !ShapefileTool.runJob(parameters, jobOptions, datastore)) {
+                writeResult(output, id, "error", "Invalid job: Invalid arguments");
+            } else {
+                writeResult(output, id, "ok", null);
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+            writeResult(output, id, "error", e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+
+    private static void writeResult(PrintStream output, Object id, String status, String message) {
+
+        JSONObject result = new JSONObject();
+        result.put("id", id != null ? id : JSONObject.NULL);
+        result.put("status", status);
+        if (message != null) result.put("message", message);
+
+        synchronized (output) {
+            output.println(result.toString());
+            output.flush();
+        }
+    }
+
+
+    /**
+     * Initializes the GeoTools factories and the EPSG database, which would otherwise delay the first job.
+     */
+    private static void warmUp() {
+
+        try {
+            FileDataStoreFinder.getDataStoreFactory("shp");
+            DataStoreFinder.getAvailableDataStores();
+            CRS.decode("EPSG:4326");
+        } catch (Exception e) {
+            System.err.println("Failed to initialize GeoTools: " + e.getMessage());
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package org.dainst.idaifield;
 
+import org.dainst.idaifield.datastore.Datastore;
+import org.dainst.idaifield.datastore.DatastoreConfiguration;
+import org.dainst.idaifield.exporter.ExportOptions;
 import org.dainst.idaifield.exporter.ShapefileExporter;
+import org.dainst.idaifield.importer.ImportOptions;
 import org.dainst.idaifield.importer.ShapefileImporter;
 
 import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -14,12 +28,24 @@ public class ShapefileTool {
     public static void main(String[] arguments) {
 
         try {
-            switch(arguments[0]) {
+            Map<String, String> options = new HashMap<>();
+            List<String> parameters = extractOptions(arguments, options);
+
+            DatastoreConfiguration configuration = createDatastoreConfiguration(options);
+            if (configuration == null || parameters.isEmpty()) {
+                printUsageInformation();
+                return;
+            }
+
+            switch(parameters.get(0)) {
                 case "import":
-                    runImporter(arguments);
-                    break;
                 case "export":
-                    runExporter(arguments);
+                    try (Datastore datastore = new Datastore(configuration)) {
+                        if (!runJob(parameters, options, datastore)) printUsageInformation();
+                    }
+                    break;
+                case "server":
+                    runServer(parameters, options, configuration);
                     break;
                 default:
                     printUsageInformation();
@@ -30,33 +56,429 @@ public class ShapefileTool {
     }
 
 
-    private static void runImporter(String[] arguments) throws Exception {
+    /**
+     * Runs an import or export job with the given parameters and job options.
+     *
+     * @return false if the parameters or options are invalid
+     */
+    static boolean runJob(List<String> parameters, Map<String, String> options,
+                          Datastore datastore) throws Exception {
 
-        if (arguments.length != 4) {
-            printUsageInformation();
-            return;
+        switch (parameters.get(0)) {
+            case "import":
+                return runImporter(parameters, options, datastore);
+            case "export":
+                return runExporter(parameters, options, datastore);
+            default:
+                return false;
+        }
+    }
+
+
+    private static boolean runImporter(List<String> parameters, Map<String, String> options,
+                                       Datastore datastore) throws Exception {
+
+        if (parameters.size() != 4) return false;
+
+        ImportOptions importOptions = createImportOptions(options);
+        if (importOptions == null) return false;
+
+        ShapefileImporter.run(datastore, parameters.get(1), parameters.get(2), parameters.get(3), importOptions);
+
+        return true;
+    }
+
+
+    private static boolean runExporter(List<String> parameters, Map<String, String> options,
+                                       Datastore datastore) throws Exception {
+
+        if (parameters.size() < 5 || parameters.size() > 6 || !parameters.get(2).contains(File.separator)) {
+            return false;
         }
 
-        ShapefileImporter.run(arguments[1], arguments[2], arguments[3]);
+        ExportOptions exportOptions = createExportOptions(options);
+        if (exportOptions == null) return false;
+
+        String operation = parameters.get(4);
+        String epsg = parameters.size() == 6 ? parameters.get(5) : null;
+
+        if (operation.equals("all")) {
+            ShapefileExporter.runBatch(datastore, parameters.get(1), parameters.get(2), parameters.get(3),
+                    null, epsg, exportOptions);
+        } else if (operation.contains(",")) {
+            ShapefileExporter.runBatch(datastore, parameters.get(1), parameters.get(2), parameters.get(3),
+                    Arrays.asList(operation.split(",")), epsg, exportOptions);
+        } else {
+            ShapefileExporter.run(datastore, parameters.get(1), parameters.get(2), parameters.get(3),
+                    operation, epsg, exportOptions);
+        }
+
+        return true;
     }
 
 
-    private static void runExporter(String[] arguments) throws Exception {
+    private static void runServer(List<String> parameters, Map<String, String> options,
+                                  DatastoreConfiguration configuration) throws Exception {
 
-        if (arguments.length < 5 || arguments.length > 6 || !arguments[2].contains(File.separator)) {
+        ServerOptions serverOptions = createServerOptions(options);
+        if (parameters.size() != 1 || serverOptions == null) {
             printUsageInformation();
             return;
         }
 
-        ShapefileExporter.run(arguments[1], arguments[2], arguments[3], arguments[4],
-                arguments.length == 6 ? arguments[5] : null);
+        try (Datastore datastore = new Datastore(configuration)) {
+            new ShapefileServer(datastore, serverOptions).run(System.in, System.out);
+        }
+    }
+
+
+    /**
+     * Moves all arguments of the form --name=value to the options map.
+     *
+     * @return the remaining arguments
+     */
+    static List<String> extractOptions(String[] arguments, Map<String, String> options) {
+
+        List<String> parameters = new ArrayList<>();
+
+        for (String argument : arguments) {
+            if (argument.startsWith("--")) {
+                int separatorIndex = argument.indexOf('=');
+                if (separatorIndex == -1) {
+                    options.put(argument.substring(2), "true");
+                } else {
+                    options.put(argument.substring(2, separatorIndex), argument.substring(separatorIndex + 1));
+                }
+            } else {
+                parameters.add(argument);
+            }
+        }
+
+        return parameters;
+    }
+
+
+    /**
+     * Removes the datastore options from the options map.
+     */
+    private static DatastoreConfiguration createDatastoreConfiguration(Map<String, String> options) {
+
+        DatastoreConfiguration configuration = new DatastoreConfiguration();
+
+        try {
+            for (String option : new ArrayList<>(options.keySet())) {
+                String value = options.get(option);
+                switch (option) {
+                    case "url":
+                        configuration.setUrl(value);
+                        break;
+                    case "max-connections":
+                        configuration.setMaxConnections(parsePositiveInt(value));
+                        break;
+                    case "connect-timeout":
+                        configuration.setConnectTimeout(parsePositiveInt(value));
+                        break;
+                    case "socket-timeout":
+                        configuration.setSocketTimeout(parsePositiveInt(value));
+                        break;
+                    case "pool-timeout":
+                        configuration.setPoolTimeout(parseNonNegativeInt(value));
+                        break;
+                    case "gzip-requests":
+                        configuration.setCompressRequests(Boolean.parseBoolean(value));
+                        break;
+                    case "gzip-responses":
+                        configuration.setCompressResponses(Boolean.parseBoolean(value));
+                        break;
+                    case "page-size":
+                        configuration.setPageSize(parsePositiveInt(value));
+                        break;
+                    default:
+                        continue;
+                }
+                options.remove(option);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid option value: " + e.getMessage());
+            return null;
+        }
+
+        return configuration;
+    }
+
+
+    private static ImportOptions createImportOptions(Map<String, String> options) {
+
+        ImportOptions importOptions = new ImportOptions();
+
+        try {
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                switch (option.getKey()) {
+                    case "chunk-size":
+                        importOptions.setChunkSize(parsePositiveInt(option.getValue()));
+                        break;
+                    case "batch-size":
+                        importOptions.setBatchSize(parsePositiveInt(option.getValue()));
+                        break;
+                    case "max-requests":
+                        importOptions.setMaxRequests(parsePositiveInt(option.getValue()));
+                        break;
+                    case "skip-unchanged":
+                        importOptions.setSkipUnchanged(Boolean.parseBoolean(option.getValue()));
+                        break;
+                    case "tolerance":
+                        importOptions.setTolerance(parseNonNegativeDouble(option.getValue()));
+                        break;
+                    default:
+                        System.err.println("Unknown option: --" + option.getKey());
+                        return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid option value: " + e.getMessage());
+            return null;
+        }
+
+        return importOptions;
+    }
+
+
+    private static ExportOptions createExportOptions(Map<String, String> options) {
+
+        ExportOptions exportOptions = new ExportOptions();
+
+        try {
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                switch (option.getKey()) {
+                    case "task-size":
+                        exportOptions.setTaskSize(parsePositiveInt(option.getValue()));
+                        break;
+                    case "writer-threads":
+                        exportOptions.setWriterThreads(parsePositiveInt(option.getValue()));
+                        break;
+                    case "direct-zip":
+                        exportOptions.setDirectZip(Boolean.parseBoolean(option.getValue()));
+                        break;
+                    case "compression-level":
+                        exportOptions.setCompressionLevel(parseCompressionLevel(option.getValue()));
+                        break;
+                    case "compression-threads":
+                        exportOptions.setCompressionThreads(parsePositiveInt(option.getValue()));
+                        break;
+                    case "zip-buffer-size":
+                        exportOptions.setZipBufferSize(parsePositiveInt(option.getValue()));
+                        break;
+                    case "incremental":
+                        exportOptions.setIncremental(Boolean.parseBoolean(option.getValue()));
+                        break;
+                    case "cache-folder":
+                        exportOptions.setCacheFolderPath(option.getValue());
+                        break;
+                    case "resource-cache":
+                        exportOptions.setResourceCache(Boolean.parseBoolean(option.getValue()));
+                        break;
+                    case "resource-cache-size":
+                        exportOptions.setResourceCacheSize(parsePositiveInt(option.getValue()) * 1024L * 1024L);
+                        break;
+                    case "operation-threads":
+                        exportOptions.setOperationThreads(parsePositiveInt(option.getValue()));
+                        break;
+                    case "types":
+                        exportOptions.getFilter().setTypes(Arrays.asList(option.getValue().split(",")));
+                        break;
+                    case "create-type-index":
+                        exportOptions.setCreateTypeIndex(Boolean.parseBoolean(option.getValue()));
+                        break;
+                    case "bbox":
+                        exportOptions.getFilter().setBoundingBox(parseBoundingBox(option.getValue()));
+                        break;
+                    case "modified-since":
+                        exportOptions.getFilter().setModifiedSince(parseDate(option.getValue()));
+                        break;
+                    default:
+                        System.err.println("Unknown option: --" + option.getKey());
+                        return null;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            System.err.println("Invalid option value: " + e.getMessage());
+            return null;
+        }
+
+        if (exportOptions.isIncremental() && exportOptions.getFilter().getModifiedSince() != null) {
+            System.err.println("The option --modified-since cannot be combined with --incremental");
+            return null;
+        }
+
+        return exportOptions;
+    }
+
+
+    private static ServerOptions createServerOptions(Map<String, String> options) {
+
+        ServerOptions serverOptions = new ServerOptions();
+
+        try {
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                switch (option.getKey()) {
+                    case "job-threads":
+                        serverOptions.setJobThreads(parsePositiveInt(option.getValue()));
+                        break;
+                    case "queue-size":
+                        serverOptions.setQueueSize(parsePositiveInt(option.getValue()));
+                        break;
+                    default:
+                        System.err.println("Unknown option: --" + option.getKey());
+                        return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid option value: " + e.getMessage());
+            return null;
+        }
+
+        return serverOptions;
+    }
+
+
+    private static int parsePositiveInt(String value) {
+
+        int result = Integer.parseInt(value);
+        if (result < 1) throw new NumberFormatException(value);
+
+        return result;
+    }
+
+
+    private static int parseNonNegativeInt(String value) {
+
+        int result = Integer.parseInt(value);
+        if (result < 0) throw new NumberFormatException(value);
+
+        return result;
+    }
+
+
+    private static double parseNonNegativeDouble(String value) {
+
+        double result = Double.parseDouble(value);
+        if (!(result >= 0) || Double.isInfinite(result)) throw new NumberFormatException(value);
+
+        return result;
+    }
+
+
+    /**
+     * @return minX, minY, maxX and maxY
+     */
+    private static double[] parseBoundingBox(String value) {
+
+        String[] values = value.split(",");
+        if (values.length != 4) throw new NumberFormatException(value);
+
+        double[] result = new double[4];
+        for (int i = 0; i < 4; i++) {
+            result[i] = Double.parseDouble(values[i]);
+            if (!Double.isFinite(result[i])) throw new NumberFormatException(value);
+        }
+        if (result[0] > result[2] || result[1] > result[3]) throw new NumberFormatException(value);
+
+        return result;
+    }
+
+
+    /**
+     * @param value a date (2020-01-31, interpreted as midnight UTC) or an instant (2020-01-31T12:00:00Z)
+     * @return the date in the format of the dates stored in the documents
+     */
+    private static String parseDate(String value) {
+
+        Instant instant = value.contains("T")
+                ? Instant.parse(value)
+                : LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+        return DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC).format(instant);
+    }
+
+
+    private static int parseCompressionLevel(String value) {
+
+        int result = Integer.parseInt(value);
+        if (result < -1 || result > 9) throw new NumberFormatException(value);
+
+        return result;
     }
 
 
     private static void printUsageInformation() {
 
-        System.err.println("java -jar shapefile-tool.jar import [projectName] [userName] [shapefilePath]");
+        System.err.println("java -jar shapefile-tool.jar import [projectName] [userName] [shapefilePath] [options]");
         System.err.println("java -jar shapefile-tool.jar export [projectName] [outputFilePath] "
-                + "[tempFolderPath] [operation] [epsg]");
+                + "[tempFolderPath] [operation] [epsg] [options]");
+        System.err.println("java -jar shapefile-tool.jar server [options]");
+        System.err.println();
+        System.err.println("Export operation: an operation ID, \"project\" for the whole project, several "
+                + "operation IDs separated by commas or \"all\" for all operations. Several operations are "
+                + "exported to one ZIP archive per operation, named [outputFileName]_[operationId].zip.");
+        System.err.println();
+        System.err.println("Datastore options:");
+        System.err.println("  --url=[url]                 URL of the sync server (default: http://localhost:3000/)");
+        System.err.println("  --max-connections=[n]       Maximum number of open connections (default: 10)");
+        System.err.println("  --connect-timeout=[ms]      Timeout for establishing a connection (default: 10000)");
+        System.err.println("  --socket-timeout=[ms]       Timeout for waiting for response data (default: 300000)");
+        System.err.println("  --pool-timeout=[ms]         Timeout for waiting for a free connection, 0 for no timeout "
+                + "(default: 0)");
+        System.err.println("  --gzip-requests             Send gzip-compressed request bodies");
+        System.err.println("  --gzip-responses=[bool]     Accept gzip-compressed responses (default: true)");
+        System.err.println("  --page-size=[n]             Number of documents fetched per query page (default: 500)");
+        System.err.println();
+        System.err.println("Import options:");
+        System.err.println("  --chunk-size=[n]            Number of documents fetched with a single request "
+                + "(default: 100)");
+        System.err.println("  --batch-size=[n]            Number of documents written with a single request "
+                + "(default: 100)");
+        System.err.println("  --max-requests=[n]          Maximum number of requests in flight at the same time, "
+                + "limited by --max-connections (default: 1)");
+        System.err.println("  --skip-unchanged            Do not update resources whose geometry has not changed");
+        System.err.println("  --tolerance=[value]         Maximum difference of coordinate values considered equal "
+                + "by --skip-unchanged (default: 0)");
+        System.err.println();
+        System.err.println("Export options:");
+        System.err.println("  --task-size=[n]             Number of features of a geometry type passed to its "
+                + "shapefile writer as one task, see --writer-threads (default: 1000)");
+        System.err.println("  --writer-threads=[n]        Number of shapefiles written concurrently (default: 1)");
+        System.err.println("  --direct-zip                Write the shapefiles directly into the ZIP archive without "
+                + "using the temp folder");
+        System.err.println("  --compression-level=[n]     ZIP compression level from 1 to 9, 0 for no compression "
+                + "(default: -1)");
+        System.err.println("  --compression-threads=[n]   Number of ZIP entries compressed concurrently (default: 1)");
+        System.err.println("  --zip-buffer-size=[n]       Buffer size in bytes for ZIP archive I/O (default: 65536)");
+        System.err.println("  --incremental               Read only the changes since the last export of the same "
+                + "operation");
+        System.err.println("  --cache-folder=[path]       Folder for data kept between exports (default: "
+                + "[tempFolderPath]/cache)");
+        System.err.println("  --resource-cache            Keep the fetched resources in the cache folder and fetch "
+                + "only changed resources");
+        System.err.println("  --resource-cache-size=[MB]  Maximum size of the resource cache of a project "
+                + "(default: 256)");
+        System.err.println("  --operation-threads=[n]     Number of operations written concurrently when exporting "
+                + "several operations (default: number of processors)");
+        System.err.println("  --types=[types]             Export only resources of the given types, separated by "
+                + "commas");
+        System.err.println("  --create-type-index         Create an index on the resource type in the project "
+                + "database to speed up --types (the index is replicated to other clients)");
+        System.err.println("  --bbox=[minX,minY,maxX,maxY]");
+        System.err.println("                              Export only geometries intersecting the bounding box");
+        System.err.println("  --modified-since=[date]     Export only resources created or modified since the date "
+                + "(e.g. 2020-01-31 or 2020-01-31T12:00:00Z), not combinable with --incremental");
+        System.err.println();
+        System.err.println("Server mode: reads one job per line from standard input, e.g. {\"id\": \"1\", "
+                + "\"arguments\": [\"export\", ...]}, with the arguments of an import or export command without "
+                + "datastore options. Writes one result per job to standard output.");
+        System.err.println();
+        System.err.println("Server options:");
+        System.err.println("  --job-threads=[n]           Number of jobs run concurrently (default: 1)");
+        System.err.println("  --queue-size=[n]            Number of jobs waiting to be run before further jobs are "
+                + "rejected (default: 16)");
     }
 }
@@ -0,0 +1,345 @@
+package org.dainst.idaifield.cache;
+
+import org.dainst.idaifield.model.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Size-bounded cache of decoded resources on disk, keyed by document ID and revision.
+ *
+ * The serialized resources are appended to a data file. An index file maps each document ID to the revision and
+ * position of its entry and lists the entries from least to most recently used. The index is held in memory while
+ * the cache is open and written when it is closed. If the entries exceed the maximum size, the least recently used
+ * ones are evicted. The data file is compacted when it contains more unused than used bytes.
+ *
+ * While the cache is open, it holds a lock on the lock file in the cache folder, so that other processes using
+ * the same folder wait until it is closed. Within the process, caches opened for the same folder by concurrent
+ * jobs wait for each other as well. Entries which cannot be read are removed and treated as missing.
+ */
+public class ResourceCache implements Closeable {
+
+    private static final int formatVersion = 2;
+
+    private static final Map<String, Semaphore> folderLocks = new ConcurrentHashMap<>();
+
+    private final File dataFile;
+    private final File indexFile;
+    private final long maxSize;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Semaphore folderLock;
+    private FileChannel lockChannel;
+    private RandomAccessFile data;
+    private long usedBytes;
+
+
+    private static class Entry {
+
+        final String revision;
+        final long offset;
+        final int length;
+
+
+        Entry(String revision, long offset, int length) {
+
+            this.revision = revision;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+
+    /**
+     * @param maxSize the maximum size in bytes of all cached entries
+     */
+    public ResourceCache(File folder, long maxSize) throws IOException {
+
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Failed to create folder " + folder.getAbsolutePath());
+        }
+
+        this.dataFile = new File(folder, "resources.data");
+        this.indexFile = new File(folder, "resources.index");
+        this.maxSize = maxSize;
+
+        this.folderLock = acquireFolderLock(folder);
+
+        try {
+            File lockFile = new File(folder, "resources.lock");
+            lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            acquireFileLock(lockChannel, lockFile);
+
+            data = new RandomAccessFile(dataFile, "rw");
+            if (!readIndex()) {
+                entries.clear();
+                usedBytes = 0;
+                data.setLength(0);
+            }
+
+            evictLeastRecentlyUsed();
+        } catch (IOException | RuntimeException e) {
+            if (data != null) data.close();
+            releaseLocks();
+            throw e;
+        }
+    }
+
+
+    /**
+     * @return the cached resource or null if the cache does not contain the given revision of the document
+     */
+    public synchronized Resource get(String documentId, String revision) throws IOException {
+
+        Entry entry = entries.get(documentId);
+        if (entry == null) return null;
+
+        if (!entry.revision.equals(revision)) {
+            remove(documentId);
+            return null;
+        }
+
+        try {
+            byte[] bytes = new byte[entry.length];
+            data.seek(entry.offset);
+            data.readFully(bytes);
+
+            return ResourceSerializer.read(new DataInputStream(new ByteArrayInputStream(bytes)), entry.length);
+        } catch (IOException e) {
+            System.err.println("Failed to read resource cache entry " + documentId + ": " + e.getMessage());
+            remove(documentId);
+            return null;
+        }
+    }
+
+
+    public synchronized void put(String documentId, String revision, Resource resource) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResourceSerializer.write(resource, new DataOutputStream(bytes));
+
+        remove(documentId);
+
+        long offset = data.length();
+        data.seek(offset);
+        data.write(bytes.toByteArray());
+
+        entries.put(documentId, new Entry(revision, offset, bytes.size()));
+        usedBytes += bytes.size();
+
+        evictLeastRecentlyUsed();
+    }
+
+
+    /**
+     * Compacts the data file if necessary, writes the index and releases the lock.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        try {
+            if (data.length() - usedBytes > usedBytes) compact();
+            writeIndex();
+        } finally {
+            try {
+                data.close();
+            } finally {
+                releaseLocks();
+            }
+        }
+    }
+
+
+    /**
+     * Waits until no other cache of the process is open for the folder.
+     */
+    private static Semaphore acquireFolderLock(File folder) throws IOException {
+
+        Semaphore folderLock = folderLocks.computeIfAbsent(folder.getCanonicalPath(), path -> new Semaphore(1));
+        if (folderLock.tryAcquire()) return folderLock;
+
+        System.err.println("Waiting for resource cache " + folder.getAbsolutePath());
+
+        try {
+            folderLock.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for resource cache "
+                    + folder.getAbsolutePath());
+        }
+
+        return folderLock;
+    }
+
+
+    /**
+     * Waits until no other process holds the lock.
+     */
+    private static void acquireFileLock(FileChannel channel, File lockFile) throws IOException {
+
+        if (channel.tryLock() != null) return;
+
+        System.err.println("Waiting for resource cache lock " + lockFile.getAbsolutePath());
+        channel.lock();
+    }
+
+
+    /**
+     * Closing the channel releases the file lock.
+     */
+    private void releaseLocks() throws IOException {
+
+        try {
+            if (lockChannel != null) lockChannel.close();
+        } finally {
+            folderLock.release();
+        }
+    }
+
+
+    private void remove(String documentId) {
+
+        Entry entry = entries.remove(documentId);
+        if (entry != null) usedBytes -= entry.length;
+    }
+
+
+    private void evictLeastRecentlyUsed() {
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+        while (usedBytes > maxSize && iterator.hasNext()) {
+            usedBytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+
+    /**
+     * Copies the entries to a new data file in the order of their last use.
+     */
+    private void compact() throws IOException {
+
+        File tempFile = createTempFile(dataFile);
+        LinkedHashMap<String, Entry> compactedEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)))) {
+                long offset = 0;
+                for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                    Entry entry = mapEntry.getValue();
+                    byte[] bytes = new byte[entry.length];
+                    data.seek(entry.offset);
+                    data.readFully(bytes);
+                    output.write(bytes);
+
+                    compactedEntries.put(mapEntry.getKey(), new Entry(entry.revision, offset, entry.length));
+                    offset += entry.length;
+                }
+            }
+
+            data.close();
+            Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+
+        data = new RandomAccessFile(dataFile, "rw");
+
+        entries.clear();
+        entries.putAll(compactedEntries);
+    }
+
+
+    /**
+     * @return false if the index does not exist, cannot be read or does not match the data file
+     */
+    private boolean readIndex() {
+
+        if (!indexFile.exists()) return false;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (input.readInt() != formatVersion) return false;
+
+            long dataLength = data.length();
+            if (input.readLong() != dataLength) return false;
+
+            int entryCount = input.readInt();
+            if (entryCount < 0) return false;
+
+            for (int i = 0; i < entryCount; i++) {
+                String documentId = input.readUTF();
+                Entry entry = new Entry(input.readUTF(), input.readLong(), input.readInt());
+                if (entry.offset < 0 || entry.length < 0 || entry.offset + entry.length > dataLength) return false;
+
+                entries.put(documentId, entry);
+                usedBytes += entry.length;
+            }
+
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to read resource cache index " + indexFile.getAbsolutePath() + ": "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+
+    private void writeIndex() throws IOException {
+
+        File tempFile = createTempFile(indexFile);
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)))) {
+                output.writeInt(formatVersion);
+                output.writeLong(data.length());
+                output.writeInt(entries.size());
+
+                for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                    output.writeUTF(mapEntry.getKey());
+                    output.writeUTF(mapEntry.getValue().revision);
+                    output.writeLong(mapEntry.getValue().offset);
+                    output.writeInt(mapEntry.getValue().length);
+                }
+            }
+
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+
+    /**
+     * @return a new temporary file with a unique name in the folder of the given file
+     */
+    private static File createTempFile(File file) throws IOException {
+
+        return File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+    }
+}
@@ -0,0 +1,185 @@
+package org.dainst.idaifield.cache;
+
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Writes resources in a compact binary format and reads them back. Geometries are written as their packed
+ * ordinate and offset arrays, so no conversion is needed in either direction.
+ *
+ * When reading, all lengths and counts are checked against the size of the data and the geometry structure is
+ * validated, so that truncated or corrupt data results in an IOException.
+ */
+public class ResourceSerializer {
+
+    public static void write(Resource resource, DataOutput output) throws IOException {
+
+        writeString(resource.getId(), output);
+        writeString(resource.getIdentifier(), output);
+        writeString(resource.getShortDescription(), output);
+        writeString(resource.getType(), output);
+
+        output.writeInt(resource.getRecordedInIds().size());
+        for (String recordedInId : resource.getRecordedInIds()) {
+            writeString(recordedInId, output);
+        }
+
+        writeGeometry(resource.getGeometry(), output);
+    }
+
+
+    /**
+     * @param maxLength the maximum number of bytes the resource can consist of, e. g. the size of the cache entry
+     */
+    public static Resource read(DataInput input, long maxLength) throws IOException {
+
+        Resource resource = new Resource();
+
+        resource.setId(readString(input, maxLength));
+        resource.setIdentifier(readString(input, maxLength));
+        resource.setShortDescription(readString(input, maxLength));
+        resource.setType(readString(input, maxLength));
+
+        int recordedInCount = readCount(input, maxLength / 4);
+        List<String> recordedInIds = new ArrayList<>(recordedInCount);
+        for (int i = 0; i < recordedInCount; i++) {
+            recordedInIds.add(readString(input, maxLength));
+        }
+        resource.setRecordedInIds(recordedInIds);
+
+        resource.setGeometry(readGeometry(input, maxLength));
+
+        return resource;
+    }
+
+
+    private static void writeGeometry(Geometry geometry, DataOutput output) throws IOException {
+
+        if (geometry == null) {
+            output.writeByte(-1);
+            return;
+        }
+
+        output.writeByte(geometry.getType().ordinal());
+        output.writeByte(geometry.getDimension());
+
+        double[] ordinates = geometry.getOrdinates();
+        output.writeInt(ordinates.length);
+        for (double ordinate : ordinates) {
+            output.writeDouble(ordinate);
+        }
+
+        writeOffsets(geometry.getPartOffsets(), output);
+        writeOffsets(geometry.getRingOffsets(), output);
+    }
+
+
+    private static Geometry readGeometry(DataInput input, long maxLength) throws IOException {
+
+        int type = input.readByte();
+        if (type == -1) return null;
+        if (type < 0 || type >= GeometryType.values().length) throw new IOException("Invalid geometry type " + type);
+
+        int dimension = input.readByte();
+        if (dimension != 2 && dimension != 3) throw new IOException("Invalid geometry dimension " + dimension);
+
+        double[] ordinates = new double[readCount(input, maxLength / 8)];
+        if (ordinates.length % dimension != 0) throw new IOException("Invalid number of ordinates");
+        for (int i = 0; i < ordinates.length; i++) {
+            ordinates[i] = input.readDouble();
+        }
+
+        int[] partOffsets = readOffsets(input, maxLength);
+        int[] ringOffsets = readOffsets(input, maxLength);
+        validateOffsets(partOffsets, ringOffsets.length - 1);
+        validateOffsets(ringOffsets, ordinates.length / dimension);
+
+        Geometry geometry = new Geometry();
+        geometry.setType(GeometryType.values()[type]);
+        geometry.setOrdinates(dimension, ordinates, partOffsets, ringOffsets);
+
+        return geometry;
+    }
+
+
+    private static void writeOffsets(int[] offsets, DataOutput output) throws IOException {
+
+        output.writeInt(offsets.length);
+        for (int offset : offsets) {
+            output.writeInt(offset);
+        }
+    }
+
+
+    private static int[] readOffsets(DataInput input, long maxLength) throws IOException {
+
+        int[] offsets = new int[readCount(input, maxLength / 4)];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = input.readInt();
+        }
+
+        return offsets;
+    }
+
+
+    /**
+     * Makes sure that the offsets start at 0, do not decrease and end at the number of elements they refer to.
+     */
+    private static void validateOffsets(int[] offsets, int elementCount) throws IOException {
+
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != elementCount) {
+            throw new IOException("Invalid geometry offsets");
+        }
+
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) throw new IOException("Invalid geometry offsets");
+        }
+    }
+
+
+    private static int readCount(DataInput input, long maxCount) throws IOException {
+
+        int count = input.readInt();
+        if (count < 0 || count > maxCount) throw new IOException("Invalid length " + count);
+
+        return count;
+    }
+
+
+    /**
+     * Strings are written as UTF-8 bytes preceded by their length, or -1 for null.
+     */
+    private static void writeString(String value, DataOutput output) throws IOException {
+
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+
+    private static String readString(DataInput input, long maxLength) throws IOException {
+
+        int length = input.readInt();
+        if (length == -1) return null;
+        if (length < 0 || length > maxLength) throw new IOException("Invalid length " + length);
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
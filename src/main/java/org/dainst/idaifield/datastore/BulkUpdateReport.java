@@ -0,0 +1,64 @@
+package org.dainst.idaifield.datastore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Result of a bulk update, listing the IDs of the documents which were updated, rejected because of a conflict
+ * or rejected for another reason.
+ */
+public class BulkUpdateReport {
+
+    private final List<String> updatedIds = new ArrayList<>();
+    private final List<String> conflictIds = new ArrayList<>();
+    private final Map<String, String> failures = new LinkedHashMap<>();
+
+
+    public List<String> getUpdatedIds() {
+
+        return updatedIds;
+    }
+
+
+    public List<String> getConflictIds() {
+
+        return conflictIds;
+    }
+
+
+    /**
+     * @return the error messages of all failed updates apart from conflicts, mapped by document ID
+     */
+    public Map<String, String> getFailures() {
+
+        return failures;
+    }
+
+
+    public boolean hasErrors() {
+
+        return !conflictIds.isEmpty() || !failures.isEmpty();
+    }
+
+
+    public void add(BulkUpdateReport report) {
+
+        updatedIds.addAll(report.updatedIds);
+        conflictIds.addAll(report.conflictIds);
+        failures.putAll(report.failures);
+    }
+
+
+    @Override
+    public String toString() {
+
+        String result = updatedIds.size() + " updated";
+        if (!conflictIds.isEmpty()) result += ", conflicts: " + String.join(", ", conflictIds);
+        if (!failures.isEmpty()) result += ", failures: " + failures;
+
+        return result;
+    }
+}
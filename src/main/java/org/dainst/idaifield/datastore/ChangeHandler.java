@@ -0,0 +1,13 @@
+package org.dainst.idaifield.datastore;
+
+import org.dainst.idaifield.model.Resource;
+
+
+public interface ChangeHandler {
+
+    /**
+     * @param resource the current state of the changed resource or null if the document has been deleted or does
+     *                 not contain a resource
+     */
+    void handle(String documentId, Resource resource) throws Exception;
+}
@@ -0,0 +1,142 @@
+package org.dainst.idaifield.datastore;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.dainst.idaifield.model.Resource;
+
+
+/**
+ * Decodes a _changes response requested with include_docs token by token and passes each change to the handler.
+ */
+class ChangesResponseDecoder {
+
+    private final JsonParser parser;
+    private final ResourceDecoder resourceDecoder = new ResourceDecoder();
+
+    private String lastSequence;
+    private Long pendingCount;
+    private String error;
+    private int changeCount;
+
+
+    ChangesResponseDecoder(JsonParser parser) {
+
+        this.parser = parser;
+    }
+
+
+    void read(ChangeHandler handler) throws Exception {
+
+        boolean hasResults = false;
+
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (fieldName) {
+                case "results":
+                    readChanges(handler);
+                    hasResults = true;
+                    break;
+                case "last_seq":
+                    lastSequence = parser.getValueAsString();
+                    break;
+                case "pending":
+                    if (parser.currentToken().isNumeric()) pendingCount = parser.getLongValue();
+                    break;
+                case "error":
+                case "reason":
+                    error = (error == null ? "" : error + ": ") + parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        expect(parser.currentToken(), JsonToken.END_OBJECT);
+
+        if (!hasResults || lastSequence == null) {
+            throw new Exception("Invalid response" + (error != null ? ": " + error : ""));
+        }
+    }
+
+
+    /**
+     * @return the sequence up to which the changes have been read
+     */
+    String getLastSequence() {
+
+        return lastSequence;
+    }
+
+
+    /**
+     * @return the number of changes after the last sequence or null if the server does not report it
+     */
+    Long getPendingCount() {
+
+        return pendingCount;
+    }
+
+
+    int getChangeCount() {
+
+        return changeCount;
+    }
+
+
+    private void readChanges(ChangeHandler handler) throws Exception {
+
+        expect(parser.currentToken(), JsonToken.START_ARRAY);
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            readChange(handler);
+            changeCount++;
+        }
+
+        expect(parser.currentToken(), JsonToken.END_ARRAY);
+    }
+
+
+    private void readChange(ChangeHandler handler) throws Exception {
+
+        String documentId = null;
+        Resource resource = null;
+        boolean deleted = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (fieldName) {
+                case "id":
+                    documentId = parser.getValueAsString();
+                    break;
+                case "deleted":
+                    deleted = parser.getValueAsBoolean();
+                    break;
+                case "doc":
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        resource = resourceDecoder.decodeDocument(parser);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (documentId == null) throw new Exception("Invalid response: Change without id");
+
+        handler.handle(documentId, deleted ? null : resource);
+    }
+
+
+    private static void expect(JsonToken token, JsonToken expectedToken) throws Exception {
+
+        if (token != expectedToken) {
+            throw new Exception("Invalid response: Expected " + expectedToken + ", got " + token);
+        }
+    }
+}
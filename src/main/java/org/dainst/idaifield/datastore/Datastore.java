@@ -1,220 +1,478 @@
 package org.dainst.idaifield.datastore;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
-import org.dainst.idaifield.model.Geometry;
-import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.cache.ResourceCache;
 import org.dainst.idaifield.model.Resource;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
+ * Access to the documents of the iDAI.field sync server. All requests share one pool of keep-alive connections,
+ * which is released when the datastore is closed.
+ *
  * @author Thomas Kleinke
  */
-public class Datastore {
+public class Datastore implements Closeable {
 
-    public static Map<GeometryType, List<Resource>> getResourcesWithGeometry(String projectName,
-                                                                             String operationId) throws Exception {
+    private interface PageHandler {
 
-        String query = "{ \"selector\": { \"resource.geometry\": { \"$gt\": null }";
+        void handle(FindResponseDecoder decoder) throws Exception;
+    }
 
-        if (!operationId.equals("project")) {
-            query += ", \"$or\": [{ \"resource.id\": \"" + operationId + "\" }, "
-                    + "{ \"resource.relations.isRecordedIn\": { \"$elemMatch\": " +
-                    "{ \"$eq\": \"" + operationId + "\" } } }]";
-        }
 
-        query += " } }";
+    private final DatastoreConfiguration configuration;
+    private final CloseableHttpClient httpClient;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Set<String> indexedProjects = new HashSet<>();
+
+
+    public Datastore(DatastoreConfiguration configuration) {
+
+        this.configuration = configuration;
+        this.httpClient = createHttpClient(configuration);
+    }
+
+
+    /**
+     * @return the maximum number of requests which can be in flight at the same time without waiting for a
+     * connection of the pool
+     */
+    public int getMaxConnections() {
 
-        return getResourcesMap(extractResources(getJsonData(projectName, query)));
+        return configuration.getMaxConnections();
     }
 
 
-    public static JSONObject getJSONDocument(String projectName, String resourceId) throws Exception {
+    @Override
+    public void close() throws IOException {
 
-        String query = "{ \"selector\": { \"resource.id\": \"" + resourceId + "\" } }";
+        httpClient.close();
+    }
 
-        JSONArray json = getJsonData(projectName, query);
-        if (json.length() == 0) {
-            throw new Exception("RESOURCE_NOT_FOUND " + resourceId);
-        } else {
-            return json.getJSONObject(0);
-        }
+
+    /**
+     * Fetches the resources page by page via limit and bookmark (or skip, if the server does not return
+     * bookmarks) and passes each page to the handler before requesting the next one.
+     *
+     * @param operationIds the operations whose resources are fetched, together with the operation resources
+     *                     themselves, or null for all resources of the project
+     * @param filter restricts the resources by type and modification date via the selector and by bounding box
+     *               after fetching them
+     * @param resourceFields the resource fields to be fetched in addition to the geometry and the isRecordedIn
+     *                       relation. All other fields of the documents are not transferred.
+     */
+    public void getResourcesWithGeometry(String projectName, List<String> operationIds, ResourceFilter filter,
+                                         List<String> resourceFields, ResourceHandler handler) throws Exception {
+
+        findAll(projectName, createSelector(operationIds, filter), createFieldsJSON(resourceFields), decoder -> {
+            List<Resource> resources = filterByBoundingBox(decoder.getResources(), filter);
+            if (!resources.isEmpty()) handler.handle(resources);
+        });
     }
 
 
-    public static void update(String projectName, JSONObject document) throws Exception {
+    /**
+     * Like {@link #getResourcesWithGeometry(String, List, ResourceFilter, List, ResourceHandler)}, but only the IDs
+     * and revisions of the documents are fetched page by page. Resources contained in the cache in their current
+     * revision are taken from the cache. All other resources of the page are fetched with a single request and
+     * added to the cache.
+     */
+    public void getResourcesWithGeometry(String projectName, List<String> operationIds, ResourceFilter filter,
+                                         List<String> resourceFields, ResourceCache resourceCache,
+                                         ResourceHandler handler) throws Exception {
+
+        String fields = createFieldsJSON(resourceFields);
+
+        findAll(projectName, createSelector(operationIds, filter), "[\"_id\", \"_rev\"]", decoder -> {
+            List<Resource> resources = new ArrayList<>();
+            List<String> missingIds = new ArrayList<>();
+
+            for (Map.Entry<String, String> revision : decoder.getRevisions().entrySet()) {
+                Resource resource = resourceCache.get(revision.getKey(), revision.getValue());
+                if (resource != null) {
+                    resources.add(resource);
+                } else {
+                    missingIds.add(revision.getKey());
+                }
+            }
+
+            if (!missingIds.isEmpty()) {
+                FindResponseDecoder missingDecoder = find(projectName, "{ \"selector\": { \"_id\": { \"$in\": "
+                        + new JSONArray(missingIds) + " }, \"resource.geometry\": { \"$gt\": null } }, "
+                        + "\"fields\": " + fields + ", \"limit\": " + missingIds.size() + " }");
+
+                for (Resource resource : missingDecoder.getResources()) {
+                    String revision = missingDecoder.getRevisions().get(resource.getId());
+                    if (revision != null) resourceCache.put(resource.getId(), revision, resource);
+                    resources.add(resource);
+                }
+            }
+
+            resources = filterByBoundingBox(resources, filter);
+            if (!resources.isEmpty()) handler.handle(resources);
+        });
+    }
 
-        System.out.println(document.get("_id"));
 
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPut httpPut = new HttpPut("http://localhost:3000/" + projectName + "/"
-                    + document.get("_id"));
-            httpPut.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-            httpPut.setHeader(HttpHeaders.ACCEPT, "application/json");
-            httpPut.setEntity(new StringEntity(document.toString()));
+    /**
+     * @return the current update sequence of the project database, to be used as starting point for reading
+     * changes via {@link #getChanges(String, String, ChangeHandler)}
+     */
+    public String getUpdateSequence(String projectName) throws Exception {
 
-            httpClient.execute(httpPut);
+        try (CloseableHttpResponse response = httpClient.execute(createGet(projectName, ""))) {
+            String responseBody = EntityUtils.toString(response.getEntity(), "UTF-8");
+            if (response.getStatusLine().getStatusCode() >= 300) {
+                throw new Exception("Failed to read database info: " + response.getStatusLine() + " "
+                        + responseBody);
+            }
+
+            return new JSONObject(responseBody).get("update_seq").toString();
         }
     }
 
 
-    private static JSONArray getJsonData(String projectName, String query) throws Exception {
+    /**
+     * Reads the changes since the given sequence page by page and passes each changed document to the handler.
+     *
+     * @return the sequence of the last change read
+     */
+    public String getChanges(String projectName, String since, ChangeHandler handler) throws Exception {
+
+        String sequence = since;
 
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = new HttpPost("http://localhost:3000/" + projectName + "/_find");
-            httpPost.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-            httpPost.setHeader(HttpHeaders.ACCEPT, "application/json");
-            httpPost.setEntity(new StringEntity(query));
+        while (true) {
+            String path = "_changes?include_docs=true&limit=" + configuration.getPageSize()
+                    + "&since=" + URLEncoder.encode(sequence, "UTF-8");
 
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                JSONObject json = new JSONObject(EntityUtils.toString(response.getEntity(),
-                        "UTF-8"));
-                return json.getJSONArray("docs");
+            try (CloseableHttpResponse response = httpClient.execute(createGet(projectName, path));
+                 JsonParser parser = jsonFactory.createParser(response.getEntity().getContent())) {
+                ChangesResponseDecoder decoder = new ChangesResponseDecoder(parser);
+                decoder.read(handler);
+
+                boolean complete = decoder.getPendingCount() != null
+                        ? decoder.getPendingCount() == 0
+                        : decoder.getChangeCount() < configuration.getPageSize();
+                if (complete || decoder.getLastSequence().equals(sequence)) return decoder.getLastSequence();
+
+                sequence = decoder.getLastSequence();
             }
         }
     }
 
 
-    private static List<Resource> extractResources(JSONArray jsonData) throws Exception {
+    /**
+     * Fetches the documents of the given resources via _all_docs, using one request per chunk of IDs.
+     *
+     * @return the documents found, mapped by resource ID. IDs of missing or deleted documents are not contained.
+     */
+    public Map<String, JSONObject> getJSONDocuments(String projectName, List<String> resourceIds,
+                                                    int chunkSize) throws Exception {
+
+        Map<String, JSONObject> documents = new HashMap<>();
+
+        for (int i = 0; i < resourceIds.size(); i += chunkSize) {
+            JSONObject query = new JSONObject();
+            query.put("keys", resourceIds.subList(i, Math.min(i + chunkSize, resourceIds.size())));
+
+            post(projectName, "_all_docs?include_docs=true", query.toString(), "rows", row -> {
+                JSONObject document = row.optJSONObject("doc");
+                if (document != null) documents.put(row.getString("key"), document);
+            });
+        }
+
+        return documents;
+    }
+
+
+    /**
+     * Writes the documents via _bulk_docs, using one request per batch. The request body is written to the
+     * connection while it is serialized. Values implementing {@link JSONWritable}, like the geometries set by the
+     * importer, write themselves directly to the request body.
+     */
+    public BulkUpdateReport update(String projectName, List<JSONObject> documents,
+                                   int batchSize) throws Exception {
 
-        List<Resource> resources = new ArrayList<>();
+        BulkUpdateReport report = new BulkUpdateReport();
 
-        for (int i = 0; i < jsonData.length(); i++) {
-            JSONObject jsonResource = jsonData.getJSONObject(i).getJSONObject("resource");
-            resources.add(createResource(jsonResource));
+        for (int i = 0; i < documents.size(); i += batchSize) {
+            report.add(postBulkDocs(projectName, documents.subList(i, Math.min(i + batchSize, documents.size()))));
         }
 
-        return resources;
+        return report;
     }
 
 
-    private static Resource createResource(JSONObject jsonResource) throws Exception {
+    private void post(String projectName, String path, String body, String arrayName,
+                      ResponseReader.DocumentHandler handler) throws Exception {
 
-        Resource resource = new Resource();
-        resource.setId(jsonResource.getString("id"));
-        resource.setIdentifier(jsonResource.getString("identifier"));
-        resource.setType(jsonResource.getString("type"));
-        if (jsonResource.has("shortDescription")) {
-            resource.setShortDescription(jsonResource.getString("shortDescription"));
+        try (CloseableHttpResponse response = httpClient.execute(createPost(projectName, path, body));
+             Reader reader = new BufferedReader(new InputStreamReader(response.getEntity().getContent(),
+                     StandardCharsets.UTF_8))) {
+            new ResponseReader(reader, arrayName).read(handler);
         }
+    }
+
 
+    private HttpGet createGet(String projectName, String path) {
 
-        JSONObject jsonGeometry = jsonResource.getJSONObject("geometry");
-        resource.setGeometry(createGeometry(jsonGeometry));
+        HttpGet httpGet = new HttpGet(configuration.getUrl() + projectName + "/" + path);
+        httpGet.setHeader(HttpHeaders.ACCEPT, "application/json");
 
-        return resource;
+        return httpGet;
     }
 
 
-    private static Geometry createGeometry(JSONObject jsonGeometry) throws Exception {
+    /**
+     * Fetches all documents matching the selector page by page and passes the decoder of each page to the handler
+     * before requesting the next one.
+     */
+    private void findAll(String projectName, String selector, String fields,
+                         PageHandler handler) throws Exception {
+
+        String bookmark = null;
+        int skip = 0;
+
+        while (true) {
+            String query = "{ \"selector\": " + selector + ", \"fields\": " + fields
+                    + ", \"limit\": " + configuration.getPageSize();
+            if (bookmark != null) {
+                query += ", \"bookmark\": " + JSONObject.quote(bookmark);
+            } else if (skip > 0) {
+                query += ", \"skip\": " + skip;
+            }
+            query += " }";
+
+            FindResponseDecoder decoder = find(projectName, query);
 
-        Geometry geometry = new Geometry();
-        JSONArray jsonCoordinates = jsonGeometry.getJSONArray("coordinates");
+            handler.handle(decoder);
+            if (decoder.getDocumentCount() < configuration.getPageSize()) break;
 
-        switch(jsonGeometry.getString("type")) {
-            case "Point":
-                geometry.setType(GeometryType.MULTIPOINT);
-                geometry.setCoordinates(new double[][][][]{{{extractPointCoordinates(jsonCoordinates)}}});
-                break;
-            case "MultiPoint":
-                geometry.setType(GeometryType.MULTIPOINT);
-                geometry.setCoordinates(new double[][][][]{{extractMultiPointOrPolylineCoordinates(jsonCoordinates)}});
-                break;
-            case "LineString":
-                geometry.setType(GeometryType.MULTIPOLYLINE);
-                geometry.setCoordinates(new double[][][][]{{extractMultiPointOrPolylineCoordinates(jsonCoordinates)}});
-                break;
-            case "MultiLineString":
-                geometry.setType(GeometryType.MULTIPOLYLINE);
-                geometry.setCoordinates(new double[][][][]{extractMultiPolylineOrPolygonCoordinates(jsonCoordinates)});
-                break;
-            case "Polygon":
-                geometry.setType(GeometryType.MULTIPOLYGON);
-                geometry.setCoordinates(new double[][][][]{extractMultiPolylineOrPolygonCoordinates(jsonCoordinates)});
-                break;
-            case "MultiPolygon":
-                geometry.setType(GeometryType.MULTIPOLYGON);
-                geometry.setCoordinates(extractMultiPolygonCoordinates(jsonCoordinates));
-                break;
-            default:
-                throw new Exception("Invalid geometry type: " + jsonGeometry.getString("type"));
+            bookmark = decoder.getBookmark();
+            skip += decoder.getDocumentCount();
         }
+    }
+
+
+    /**
+     * Creates a JSON index on the resource type in the project database, so that the server does not need to scan
+     * all documents if the resources are filtered by type. The index is a design document, which is replicated
+     * like any other document, so it is only created on request. The request is sent once per project and
+     * datastore. Nothing changes if the index already exists.
+     */
+    public synchronized void createTypeIndex(String projectName) throws Exception {
+
+        if (indexedProjects.contains(projectName)) return;
 
-        return geometry;
+        String body = "{ \"index\": { \"fields\": [\"resource.type\"] }, \"name\": \"resource-type\", "
+                + "\"type\": \"json\" }";
+
+        try (CloseableHttpResponse response = httpClient.execute(createPost(projectName, "_index", body))) {
+            String responseBody = EntityUtils.toString(response.getEntity(), "UTF-8");
+            if (response.getStatusLine().getStatusCode() >= 300) {
+                throw new Exception("Failed to create index on resource type: " + response.getStatusLine() + " "
+                        + responseBody);
+            }
+        }
+
+        indexedProjects.add(projectName);
     }
 
 
-    private static double[] extractPointCoordinates(JSONArray jsonCoordinates) {
+    /**
+     * @return the resources whose geometry envelope intersects the bounding box of the filter
+     */
+    private static List<Resource> filterByBoundingBox(List<Resource> resources, ResourceFilter filter) {
+
+        if (filter.getBoundingBox() == null) return resources;
 
-        double[] coordinates = new double[jsonCoordinates.length()];
-        for (int i = 0; i < jsonCoordinates.length(); i++) {
-            coordinates[i] = jsonCoordinates.getDouble(i);
+        List<Resource> result = new ArrayList<>();
+
+        for (Resource resource : resources) {
+            if (filter.intersectsBoundingBox(resource.getGeometry())) result.add(resource);
         }
 
-        return coordinates;
+        return result;
     }
 
 
-    private static double[][] extractMultiPointOrPolylineCoordinates(JSONArray jsonCoordinates) {
+    /**
+     * @return a _find selector for resources with geometry which match the types and modification date of the
+     * filter and belong to one of the operations
+     */
+    static String createSelector(List<String> operationIds, ResourceFilter filter) {
+
+        String selector = "{ \"resource.geometry\": { \"$gt\": null }";
+
+        if (filter.getTypes() != null) {
+            selector += ", \"resource.type\": " + (filter.getTypes().size() == 1
+                    ? JSONObject.quote(filter.getTypes().get(0))
+                    : "{ \"$in\": " + new JSONArray(filter.getTypes()) + " }");
+        }
+
+        List<String> alternatives = new ArrayList<>();
+
+        if (operationIds != null) {
+            String ids = new JSONArray(operationIds).toString();
+            alternatives.add("[{ \"resource.id\": { \"$in\": " + ids + " } }, "
+                    + "{ \"resource.relations.isRecordedIn\": { \"$elemMatch\": { \"$in\": " + ids + " } } }]");
+        }
+
+        if (filter.getModifiedSince() != null) {
+            String date = JSONObject.quote(filter.getModifiedSince());
+            alternatives.add("[{ \"created.date\": { \"$gte\": " + date + " } }, "
+                    + "{ \"modified\": { \"$elemMatch\": { \"date\": { \"$gte\": " + date + " } } } }]");
+        }
 
-        double[][] coordinates = new double[jsonCoordinates.length()][];
-        for (int i = 0; i < jsonCoordinates.length(); i++) {
-            coordinates[i] = extractPointCoordinates(jsonCoordinates.getJSONArray(i));
+        if (alternatives.size() == 1) {
+            selector += ", \"$or\": " + alternatives.get(0);
+        } else if (alternatives.size() == 2) {
+            selector += ", \"$and\": [{ \"$or\": " + alternatives.get(0) + " }, { \"$or\": "
+                    + alternatives.get(1) + " }]";
         }
 
-        return coordinates;
+        return selector + " }";
     }
 
 
-    private static double[][][] extractMultiPolylineOrPolygonCoordinates(JSONArray jsonCoordinates) {
+    /**
+     * @return the resource fields, the geometry and the isRecordedIn relation, together with the ID and revision
+     * of the document
+     */
+    private static String createFieldsJSON(List<String> resourceFields) {
 
-        double[][][] coordinates = new double[jsonCoordinates.length()][][];
+        JSONArray fields = new JSONArray();
+        fields.put("_id");
+        fields.put("_rev");
 
-        for (int i = 0; i < jsonCoordinates.length(); i++) {
-            coordinates[i] = extractMultiPointOrPolylineCoordinates(jsonCoordinates.getJSONArray(i));
+        for (String field : resourceFields) {
+            fields.put("resource." + field);
         }
+        fields.put("resource.geometry");
+        fields.put("resource.relations.isRecordedIn");
 
-        return coordinates;
+        return fields.toString();
+    }
+
+
+    private FindResponseDecoder find(String projectName, String query) throws Exception {
+
+        try (CloseableHttpResponse response = httpClient.execute(createPost(projectName, "_find", query));
+             JsonParser parser = jsonFactory.createParser(response.getEntity().getContent())) {
+            FindResponseDecoder decoder = new FindResponseDecoder(parser);
+            decoder.read();
+            return decoder;
+        }
     }
 
 
-    private static double[][][][] extractMultiPolygonCoordinates(JSONArray jsonCoordinates) {
+    private BulkUpdateReport postBulkDocs(String projectName, List<JSONObject> documents) throws Exception {
 
-        double [][][][] coordinates = new double[jsonCoordinates.length()][][][];
+        HttpEntity entity = new EntityTemplate(outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            DocumentWriter.writeBulkDocs(documents, writer);
+            writer.flush();
+        });
 
-        for (int i = 0; i < jsonCoordinates.length(); i ++) {
-            coordinates[i] = extractMultiPolylineOrPolygonCoordinates(jsonCoordinates.getJSONArray(i));
+        try (CloseableHttpResponse response = httpClient.execute(createPost(projectName, "_bulk_docs", entity))) {
+            String responseBody = EntityUtils.toString(response.getEntity(), "UTF-8");
+            if (response.getStatusLine().getStatusCode() >= 300) {
+                throw new Exception("Bulk update failed: " + response.getStatusLine() + " " + responseBody);
+            }
+
+            return createBulkUpdateReport(new JSONArray(responseBody));
         }
+    }
+
+
+    private HttpPost createPost(String projectName, String path, String body) {
 
-        return coordinates;
+        return createPost(projectName, path, new StringEntity(body, StandardCharsets.UTF_8));
     }
 
 
-    private static Map<GeometryType, List<Resource>> getResourcesMap(List<Resource> resources) {
+    private HttpPost createPost(String projectName, String path, HttpEntity entity) {
 
-        Map<GeometryType, List<Resource>> resourcesMap = new HashMap<>();
+        HttpPost httpPost = new HttpPost(configuration.getUrl() + projectName + "/" + path);
+        httpPost.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+        httpPost.setHeader(HttpHeaders.ACCEPT, "application/json");
+        httpPost.setEntity(configuration.isCompressRequests() ? new GzipCompressingEntity(entity) : entity);
 
-        for (Resource resource : resources) {
-            GeometryType geometryType = resource.getGeometry().getType();
-            if (!resourcesMap.containsKey(geometryType)) {
-                resourcesMap.put(geometryType, new ArrayList<>());
+        return httpPost;
+    }
+
+
+    private static CloseableHttpClient createHttpClient(DatastoreConfiguration configuration) {
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(configuration.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnections());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(configuration.getConnectTimeout())
+                .setConnectionRequestTimeout(configuration.getPoolTimeout())
+                .setSocketTimeout(configuration.getSocketTimeout())
+                .build();
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig);
+        if (!configuration.isCompressResponses()) builder.disableContentCompression();
+
+        return builder.build();
+    }
+
+
+    private static BulkUpdateReport createBulkUpdateReport(JSONArray results) {
+
+        BulkUpdateReport report = new BulkUpdateReport();
+
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            String id = result.optString("id");
+
+            if (!result.has("error")) {
+                report.getUpdatedIds().add(id);
+            } else if (result.getString("error").equals("conflict")) {
+                report.getConflictIds().add(id);
+            } else {
+                report.getFailures().put(id, result.getString("error") + ": " + result.optString("reason"));
             }
-            resourcesMap.get(geometryType).add(resource);
         }
 
-        return resourcesMap;
+        return report;
     }
 }
@@ -0,0 +1,129 @@
+package org.dainst.idaifield.datastore;
+
+
+public class DatastoreConfiguration {
+
+    private String url = "http://localhost:3000/";
+    private int maxConnections = 10;
+    private int connectTimeout = 10000;
+    private int socketTimeout = 300000;
+    private int poolTimeout = 0;
+    private boolean compressRequests = false;
+    private boolean compressResponses = true;
+    private int pageSize = 500;
+
+
+    public String getUrl() {
+
+        return url;
+    }
+
+
+    public void setUrl(String url) {
+
+        this.url = url.endsWith("/") ? url : url + "/";
+    }
+
+
+    public int getMaxConnections() {
+
+        return maxConnections;
+    }
+
+
+    public void setMaxConnections(int maxConnections) {
+
+        this.maxConnections = maxConnections;
+    }
+
+
+    /**
+     * @return the timeout in milliseconds for establishing a connection
+     */
+    public int getConnectTimeout() {
+
+        return connectTimeout;
+    }
+
+
+    public void setConnectTimeout(int connectTimeout) {
+
+        this.connectTimeout = connectTimeout;
+    }
+
+
+    /**
+     * @return the maximum time in milliseconds between two data packets of a response
+     */
+    public int getSocketTimeout() {
+
+        return socketTimeout;
+    }
+
+
+    public void setSocketTimeout(int socketTimeout) {
+
+        this.socketTimeout = socketTimeout;
+    }
+
+
+    /**
+     * @return the maximum time in milliseconds a request waits for a free connection of the pool, 0 for no limit.
+     * A request holds its connection until the response has been read, which may take up to the socket timeout.
+     */
+    public int getPoolTimeout() {
+
+        return poolTimeout;
+    }
+
+
+    public void setPoolTimeout(int poolTimeout) {
+
+        this.poolTimeout = poolTimeout;
+    }
+
+
+    /**
+     * @return true if request bodies are sent gzip-compressed
+     */
+    public boolean isCompressRequests() {
+
+        return compressRequests;
+    }
+
+
+    public void setCompressRequests(boolean compressRequests) {
+
+        this.compressRequests = compressRequests;
+    }
+
+
+    /**
+     * @return true if the server is asked for gzip-compressed responses
+     */
+    public boolean isCompressResponses() {
+
+        return compressResponses;
+    }
+
+
+    public void setCompressResponses(boolean compressResponses) {
+
+        this.compressResponses = compressResponses;
+    }
+
+
+    /**
+     * @return the number of documents fetched with a single _find request
+     */
+    public int getPageSize() {
+
+        return pageSize;
+    }
+
+
+    public void setPageSize(int pageSize) {
+
+        this.pageSize = pageSize;
+    }
+}
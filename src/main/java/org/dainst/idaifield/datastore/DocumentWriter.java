@@ -0,0 +1,69 @@
+package org.dainst.idaifield.datastore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+
+/**
+ * Writes the body of a _bulk_docs request. Works like {@link JSONObject#write(Writer)}, except that values
+ * implementing {@link JSONWritable} write themselves to the writer instead of being converted to a string.
+ */
+class DocumentWriter {
+
+    static void writeBulkDocs(List<JSONObject> documents, Writer writer) throws IOException {
+
+        writer.write("{\"docs\":[");
+        for (int i = 0; i < documents.size(); i++) {
+            if (i > 0) writer.write(',');
+            writeObject(documents.get(i), writer);
+        }
+        writer.write("]}");
+    }
+
+
+    private static void writeObject(JSONObject object, Writer writer) throws IOException {
+
+        writer.write('{');
+
+        boolean first = true;
+        for (String key : object.keySet()) {
+            if (!first) writer.write(',');
+            first = false;
+
+            JSONObject.quote(key, writer);
+            writer.write(':');
+            writeValue(object.opt(key), writer);
+        }
+
+        writer.write('}');
+    }
+
+
+    private static void writeArray(JSONArray array, Writer writer) throws IOException {
+
+        writer.write('[');
+        for (int i = 0; i < array.length(); i++) {
+            if (i > 0) writer.write(',');
+            writeValue(array.opt(i), writer);
+        }
+        writer.write(']');
+    }
+
+
+    private static void writeValue(Object value, Writer writer) throws IOException {
+
+        if (value instanceof JSONWritable) {
+            ((JSONWritable) value).write(writer);
+        } else if (value instanceof JSONObject) {
+            writeObject((JSONObject) value, writer);
+        } else if (value instanceof JSONArray) {
+            writeArray((JSONArray) value, writer);
+        } else {
+            writer.write(JSONObject.valueToString(value));
+        }
+    }
+}
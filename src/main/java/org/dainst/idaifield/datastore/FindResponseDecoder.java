@@ -0,0 +1,129 @@
+package org.dainst.idaifield.datastore;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.dainst.idaifield.model.Resource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Decodes the resources of a _find response token by token, without building a JSON tree of the documents.
+ * Resources whose geometry has empty coordinates are skipped.
+ */
+class FindResponseDecoder {
+
+    private final JsonParser parser;
+    private final ResourceDecoder resourceDecoder = new ResourceDecoder();
+
+    private List<Resource> resources;
+    private final Map<String, String> revisions = new LinkedHashMap<>();
+    private String bookmark;
+    private String error;
+    private int documentCount;
+
+
+    FindResponseDecoder(JsonParser parser) {
+
+        this.parser = parser;
+    }
+
+
+    void read() throws Exception {
+
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (fieldName) {
+                case "docs":
+                    resources = readDocuments();
+                    break;
+                case "bookmark":
+                    bookmark = parser.getValueAsString();
+                    break;
+                case "error":
+                case "reason":
+                    error = (error == null ? "" : error + ": ") + parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        expect(parser.currentToken(), JsonToken.END_OBJECT);
+
+        if (resources == null) throw new Exception("Invalid response" + (error != null ? ": " + error : ""));
+    }
+
+
+    /**
+     * @return the resources of all documents of the response which contain a resource
+     */
+    List<Resource> getResources() {
+
+        return resources;
+    }
+
+
+    /**
+     * @return the revisions of all documents of the response which contain an ID and a revision, mapped by
+     * document ID
+     */
+    Map<String, String> getRevisions() {
+
+        return revisions;
+    }
+
+
+    /**
+     * @return the bookmark returned by the server or null if the server does not support bookmarks
+     */
+    String getBookmark() {
+
+        return bookmark;
+    }
+
+
+    /**
+     * @return the number of documents contained in the response, including documents without a resource
+     */
+    int getDocumentCount() {
+
+        return documentCount;
+    }
+
+
+    private List<Resource> readDocuments() throws Exception {
+
+        List<Resource> resources = new ArrayList<>();
+
+        expect(parser.currentToken(), JsonToken.START_ARRAY);
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Resource resource = resourceDecoder.decodeDocument(parser);
+            if (resourceDecoder.getDocumentId() != null && resourceDecoder.getRevision() != null) {
+                revisions.put(resourceDecoder.getDocumentId(), resourceDecoder.getRevision());
+            }
+            if (resource != null && resource.getGeometry() != null) resources.add(resource);
+            documentCount++;
+        }
+
+        expect(parser.currentToken(), JsonToken.END_ARRAY);
+
+        return resources;
+    }
+
+
+    private static void expect(JsonToken token, JsonToken expectedToken) throws Exception {
+
+        if (token != expectedToken) {
+            throw new Exception("Invalid response: Expected " + expectedToken + ", got " + token);
+        }
+    }
+}
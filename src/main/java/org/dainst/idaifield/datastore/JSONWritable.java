@@ -0,0 +1,17 @@
+package org.dainst.idaifield.datastore;
+
+import org.json.JSONString;
+
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * Value of a document which writes its JSON representation directly to the body of a bulk update request, without
+ * creating it as a string first. Outside of bulk updates, for example when the document is converted to a string,
+ * the value is written via {@link #toJSONString()}.
+ */
+public interface JSONWritable extends JSONString {
+
+    void write(Writer writer) throws IOException;
+}
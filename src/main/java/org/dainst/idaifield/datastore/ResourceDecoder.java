@@ -0,0 +1,350 @@
+package org.dainst.idaifield.datastore;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+
+import java.util.Arrays;
+
+
+/**
+ * Decodes resources from a stream of JSON tokens without building a JSON tree. Fields which are not part of the
+ * resource model are skipped. Geometry coordinates are read directly into the packed ordinate arrays of the
+ * geometry model, independently of whether the type of the geometry precedes or follows its coordinates.
+ *
+ * The decoder reuses its coordinate buffers and must therefore not be shared between threads.
+ */
+class ResourceDecoder {
+
+    private double[] ordinates = new double[3 * 1024];
+    private int[] ringOffsets = new int[64];
+    private int[] partOffsets = new int[16];
+
+    private int vertexCount;
+    private int ringCount;
+    private int partCount;
+    private boolean hasZ;
+
+    private String documentId;
+    private String revision;
+
+
+    /**
+     * @param parser positioned at the start of a document object. After the call, it is positioned at the end of
+     *               the object.
+     * @return the resource contained in the document or null if the document does not contain a resource
+     */
+    Resource decodeDocument(JsonParser parser) throws Exception {
+
+        Resource resource = null;
+        documentId = null;
+        revision = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (fieldName) {
+                case "_id":
+                    documentId = parser.getValueAsString();
+                    break;
+                case "_rev":
+                    revision = parser.getValueAsString();
+                    break;
+                case "resource":
+                    resource = decodeResource(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        return resource;
+    }
+
+
+    /**
+     * @return the ID of the document last decoded via {@link #decodeDocument(JsonParser)} or null if the document
+     * does not contain one
+     */
+    String getDocumentId() {
+
+        return documentId;
+    }
+
+
+    /**
+     * @return the revision of the document last decoded via {@link #decodeDocument(JsonParser)} or null if the
+     * document does not contain one
+     */
+    String getRevision() {
+
+        return revision;
+    }
+
+
+    /**
+     * @param parser positioned at the start of a resource object. After the call, it is positioned at the end of
+     *               the object.
+     * @return the resource, without geometry if the resource object does not contain one
+     */
+    Resource decodeResource(JsonParser parser) throws Exception {
+
+        Resource resource = new Resource();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (fieldName) {
+                case "id":
+                    resource.setId(readString(parser));
+                    break;
+                case "identifier":
+                    resource.setIdentifier(readString(parser));
+                    break;
+                case "type":
+                    resource.setType(readString(parser));
+                    break;
+                case "shortDescription":
+                    resource.setShortDescription(readString(parser));
+                    break;
+                case "geometry":
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        resource.setGeometry(decodeGeometry(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "relations":
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        decodeRelations(parser, resource);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (resource.getId() == null) throw new Exception("Invalid resource: Missing id");
+
+        return resource;
+    }
+
+
+    /**
+     * @return the value of a scalar field or null if the value is an object or array (like an internationalized
+     * short description), which is skipped
+     */
+    private static String readString(JsonParser parser) throws Exception {
+
+        if (parser.currentToken().isScalarValue()) return parser.getValueAsString();
+
+        parser.skipChildren();
+        return null;
+    }
+
+
+    /**
+     * Reads the targets of the isRecordedIn relation. All other relations are skipped.
+     */
+    private void decodeRelations(JsonParser parser, Resource resource) throws Exception {
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String relationName = parser.getCurrentName();
+
+            if (parser.nextToken() == JsonToken.START_ARRAY && relationName.equals("isRecordedIn")) {
+                for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                    if (token == JsonToken.VALUE_STRING) {
+                        resource.getRecordedInIds().add(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+
+    /**
+     * @return the geometry or null if its coordinates are empty
+     */
+    private Geometry decodeGeometry(JsonParser parser) throws Exception {
+
+        String type = null;
+        int height = -2;
+
+        vertexCount = 0;
+        ringCount = 0;
+        partCount = 0;
+        hasZ = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            if (fieldName.equals("type")) {
+                type = parser.getValueAsString();
+            } else if (fieldName.equals("coordinates") && parser.currentToken() == JsonToken.START_ARRAY) {
+                height = readArray(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        GeometryType geometryType = getGeometryType(type);
+
+        if (height != -1 && height != getHeight(type)) {
+            throw new Exception("Invalid coordinates for geometry type: " + type);
+        }
+
+        if (height == 0) addRing();
+        if (height == 0 || height == 1) addPart();
+
+        if (partCount == 0) return null;
+
+        return createGeometry(geometryType);
+    }
+
+
+    /**
+     * Reads a coordinates array of any depth. Vertices are added to the ordinate buffer, and the end of each
+     * array of vertices and of each array of vertex arrays is recorded in the ring and part offsets.
+     *
+     * @return 0 for a vertex, 1 for an array of vertices, 2 for an array of vertex arrays and so on. -1 for an
+     * empty array.
+     */
+    private int readArray(JsonParser parser) throws Exception {
+
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) return -1;
+
+        if (token.isNumeric()) {
+            readVertex(parser);
+            return 0;
+        }
+
+        int height = -1;
+
+        while (token != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_ARRAY) throw new Exception("Invalid coordinates: Unexpected " + token);
+
+            int childHeight = readArray(parser);
+            if (childHeight >= 0) height = Math.max(height, childHeight + 1);
+
+            token = parser.nextToken();
+        }
+
+        if (height == 1) addRing();
+        if (height == 2) addPart();
+
+        return height;
+    }
+
+
+    /**
+     * @param parser positioned at the first ordinate of the vertex
+     */
+    private void readVertex(JsonParser parser) throws Exception {
+
+        if (ordinates.length < (vertexCount + 1) * 3) ordinates = Arrays.copyOf(ordinates, ordinates.length * 2);
+
+        int offset = vertexCount * 3;
+        int ordinateCount = 0;
+
+        for (JsonToken token = parser.currentToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (!token.isNumeric()) throw new Exception("Invalid coordinates: Unexpected " + token);
+            if (ordinateCount < 3) ordinates[offset + ordinateCount] = parser.getDoubleValue();
+            ordinateCount++;
+        }
+
+        if (ordinateCount < 2) throw new Exception("Invalid coordinates: Vertex with less than two ordinates");
+
+        if (ordinateCount == 2) {
+            ordinates[offset + 2] = Double.NaN;
+        } else {
+            hasZ = true;
+        }
+
+        vertexCount++;
+    }
+
+
+    private void addRing() {
+
+        if (ringOffsets.length < ringCount + 2) ringOffsets = Arrays.copyOf(ringOffsets, ringOffsets.length * 2);
+        ringOffsets[++ringCount] = vertexCount;
+    }
+
+
+    private void addPart() {
+
+        if (partOffsets.length < partCount + 2) partOffsets = Arrays.copyOf(partOffsets, partOffsets.length * 2);
+        partOffsets[++partCount] = ringCount;
+    }
+
+
+    private Geometry createGeometry(GeometryType geometryType) {
+
+        int dimension = hasZ ? 3 : 2;
+        double[] geometryOrdinates = new double[vertexCount * dimension];
+
+        for (int i = 0; i < vertexCount; i++) {
+            System.arraycopy(ordinates, i * 3, geometryOrdinates, i * dimension, dimension);
+        }
+
+        Geometry geometry = new Geometry();
+        geometry.setType(geometryType);
+        geometry.setOrdinates(dimension, geometryOrdinates, Arrays.copyOf(partOffsets, partCount + 1),
+                Arrays.copyOf(ringOffsets, ringCount + 1));
+
+        return geometry;
+    }
+
+
+    private static GeometryType getGeometryType(String type) throws Exception {
+
+        if (type == null) throw new Exception("Invalid geometry type: null");
+
+        switch (type) {
+            case "Point":
+            case "MultiPoint":
+                return GeometryType.MULTIPOINT;
+            case "LineString":
+            case "MultiLineString":
+                return GeometryType.MULTIPOLYLINE;
+            case "Polygon":
+            case "MultiPolygon":
+                return GeometryType.MULTIPOLYGON;
+            default:
+                throw new Exception("Invalid geometry type: " + type);
+        }
+    }
+
+
+    /**
+     * @return the depth of the coordinates arrays of the given GeoJSON geometry type, as returned by
+     * {@link #readArray(JsonParser)}
+     */
+    private static int getHeight(String type) {
+
+        switch (type) {
+            case "Point":
+                return 0;
+            case "MultiPoint":
+            case "LineString":
+                return 1;
+            case "MultiLineString":
+            case "Polygon":
+                return 2;
+            default:
+                return 3;
+        }
+    }
+}
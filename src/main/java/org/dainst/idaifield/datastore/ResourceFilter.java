@@ -0,0 +1,118 @@
+package org.dainst.idaifield.datastore;
+
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.Resource;
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Restricts the resources fetched for export. The types and the modification date are part of the _find selector.
+ * The bounding box cannot be expressed in a selector and is checked against the envelope of each fetched geometry.
+ */
+public class ResourceFilter {
+
+    private List<String> types;
+    private double[] boundingBox;
+    private String modifiedSince;
+
+
+    /**
+     * @return the resource types to be fetched or null for all types
+     */
+    public List<String> getTypes() {
+
+        return types;
+    }
+
+
+    public void setTypes(List<String> types) {
+
+        this.types = types;
+    }
+
+
+    /**
+     * @return minX, minY, maxX and maxY of the area the geometries have to intersect or null for no restriction
+     */
+    public double[] getBoundingBox() {
+
+        return boundingBox;
+    }
+
+
+    public void setBoundingBox(double[] boundingBox) {
+
+        this.boundingBox = boundingBox;
+    }
+
+
+    /**
+     * @return the date in the format yyyy-MM-dd'T'HH:mm:ss.SSS'Z' (UTC) since which the documents have to be
+     * created or modified or null for no restriction
+     */
+    public String getModifiedSince() {
+
+        return modifiedSince;
+    }
+
+
+    public void setModifiedSince(String modifiedSince) {
+
+        this.modifiedSince = modifiedSince;
+    }
+
+
+    /**
+     * Checks the type and the bounding box, but not the modification date, which is not part of the resource.
+     */
+    public boolean matches(Resource resource) {
+
+        return (types == null || types.contains(resource.getType()))
+                && (resource.getGeometry() == null || intersectsBoundingBox(resource.getGeometry()));
+    }
+
+
+    /**
+     * @return true if the envelope of the geometry intersects the bounding box or no bounding box is set
+     */
+    public boolean intersectsBoundingBox(Geometry geometry) {
+
+        if (boundingBox == null) return true;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        for (int vertex = 0; vertex < geometry.getVertexCount(); vertex++) {
+            minX = Math.min(minX, geometry.getX(vertex));
+            minY = Math.min(minY, geometry.getY(vertex));
+            maxX = Math.max(maxX, geometry.getX(vertex));
+            maxY = Math.max(maxY, geometry.getY(vertex));
+        }
+
+        return minX <= boundingBox[2] && maxX >= boundingBox[0] && minY <= boundingBox[3] && maxY >= boundingBox[1];
+    }
+
+
+    /**
+     * @return a string which is the same for all filters with the same types and bounding box and differs for all
+     * other filters
+     */
+    public String getKey() {
+
+        List<String> sortedTypes = null;
+        if (types != null) {
+            sortedTypes = new ArrayList<>(types);
+            Collections.sort(sortedTypes);
+        }
+
+        return (sortedTypes != null ? new JSONArray(sortedTypes).toString() : "null") + "/"
+                + Arrays.toString(boundingBox);
+    }
+}
@@ -0,0 +1,14 @@
+package org.dainst.idaifield.datastore;
+
+import org.dainst.idaifield.model.Resource;
+
+import java.util.List;
+
+
+/**
+ * Receives the resources of a query page by page.
+ */
+public interface ResourceHandler {
+
+    void handle(List<Resource> resources) throws Exception;
+}
@@ -0,0 +1,97 @@
+package org.dainst.idaifield.datastore;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Reader;
+
+
+/**
+ * Reads a JSON response containing an array of objects (like the "rows" array of an _all_docs response) object by
+ * object, so that only a single object of the array is held in memory at any time.
+ */
+class ResponseReader {
+
+    interface DocumentHandler {
+
+        void handle(JSONObject document) throws Exception;
+    }
+
+
+    private final JSONTokener tokener;
+    private final String arrayName;
+
+    private String error;
+
+
+    ResponseReader(Reader reader, String arrayName) {
+
+        this.tokener = new JSONTokener(reader);
+        this.arrayName = arrayName;
+    }
+
+
+    /**
+     * @return the number of objects contained in the array
+     */
+    int read(DocumentHandler handler) throws Exception {
+
+        Integer documentCount = null;
+
+        expect('{');
+
+        char next;
+        do {
+            String key = tokener.nextValue().toString();
+            expect(':');
+
+            if (key.equals(arrayName)) {
+                documentCount = readDocuments(handler);
+                continue;
+            }
+
+            switch (key) {
+                case "error":
+                case "reason":
+                    error = (error == null ? "" : error + ": ") + tokener.nextValue();
+                    break;
+                default:
+                    tokener.nextValue();
+            }
+        } while ((next = tokener.nextClean()) == ',');
+
+        if (next != '}') throw tokener.syntaxError("Expected '}'");
+
+        if (documentCount == null) {
+            throw new Exception("Invalid response" + (error != null ? ": " + error : ""));
+        }
+
+        return documentCount;
+    }
+
+
+    private int readDocuments(DocumentHandler handler) throws Exception {
+
+        int documentCount = 0;
+
+        expect('[');
+        if (tokener.nextClean() == ']') return 0;
+        tokener.back();
+
+        char next;
+        do {
+            handler.handle((JSONObject) tokener.nextValue());
+            documentCount++;
+        } while ((next = tokener.nextClean()) == ',');
+
+        if (next != ']') throw tokener.syntaxError("Expected ']'");
+
+        return documentCount;
+    }
+
+
+    private void expect(char character) {
+
+        if (tokener.nextClean() != character) throw tokener.syntaxError("Expected '" + character + "'");
+    }
+}
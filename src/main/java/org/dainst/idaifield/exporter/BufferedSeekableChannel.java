@@ -0,0 +1,120 @@
+package org.dainst.idaifield.exporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Write-only file channel which collects small writes in a buffer. The ZIP archive output stream writes each
+ * compressed block separately and repositions the channel to complete the local entry headers, so it needs a
+ * seekable channel rather than a buffered stream. The buffer is flushed whenever the position changes.
+ */
+class BufferedSeekableChannel implements SeekableByteChannel {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private long bufferPosition;
+
+
+    BufferedSeekableChannel(File file, int bufferSize) throws IOException {
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+
+        int length = source.remaining();
+
+        if (length > buffer.remaining()) flush();
+
+        if (length >= buffer.capacity()) {
+            while (source.hasRemaining()) channel.write(source);
+            bufferPosition = channel.position();
+        } else {
+            buffer.put(source);
+        }
+
+        return length;
+    }
+
+
+    @Override
+    public long position() {
+
+        return bufferPosition + buffer.position();
+    }
+
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+
+        flush();
+        channel.position(newPosition);
+        bufferPosition = newPosition;
+
+        return this;
+    }
+
+
+    @Override
+    public long size() throws IOException {
+
+        return Math.max(channel.size(), position());
+    }
+
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+
+        flush();
+        channel.truncate(size);
+        bufferPosition = channel.position();
+
+        return this;
+    }
+
+
+    @Override
+    public int read(ByteBuffer destination) {
+
+        throw new NonReadableChannelException();
+    }
+
+
+    @Override
+    public boolean isOpen() {
+
+        return channel.isOpen();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    private void flush() throws IOException {
+
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+
+        bufferPosition = channel.position();
+    }
+}
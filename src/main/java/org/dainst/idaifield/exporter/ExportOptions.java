@@ -0,0 +1,227 @@
+package org.dainst.idaifield.exporter;
+
+import org.dainst.idaifield.datastore.ResourceFilter;
+
+
+public class ExportOptions {
+
+    private int taskSize = 1000;
+    private int writerThreads = 1;
+    private boolean directZip = false;
+    private int compressionLevel = -1;
+    private int compressionThreads = 1;
+    private int zipBufferSize = 64 * 1024;
+    private boolean incremental = false;
+    private String cacheFolderPath;
+    private boolean resourceCache = false;
+    private long resourceCacheSize = 256L * 1024 * 1024;
+    private int operationThreads = Runtime.getRuntime().availableProcessors();
+    private ResourceFilter filter = new ResourceFilter();
+    private boolean createTypeIndex = false;
+
+
+    /**
+     * @return the number of features of a geometry type which are collected and passed to the shapefile layer as
+     * one write task. With several writer threads, this is the unit of work handed over to the thread of a layer.
+     * The features of a task are appended to the shapefile one by one and are not committed separately. The same
+     * number of resources is passed on at once when exporting from memory (snapshot or batch export).
+     */
+    public int getTaskSize() {
+
+        return taskSize;
+    }
+
+
+    public void setTaskSize(int taskSize) {
+
+        this.taskSize = taskSize;
+    }
+
+
+    /**
+     * @return the maximum number of shapefiles written concurrently (at most one per geometry type)
+     */
+    public int getWriterThreads() {
+
+        return writerThreads;
+    }
+
+
+    public void setWriterThreads(int writerThreads) {
+
+        this.writerThreads = writerThreads;
+    }
+
+
+    /**
+     * @return true if the shapefile components are written directly into the ZIP archive instead of being
+     * written to the temp folder first. The encoded records of each shapefile are buffered until the shapefile is
+     * complete, in memory up to a fixed limit and in a file in the system temp folder beyond it.
+     */
+    public boolean isDirectZip() {
+
+        return directZip;
+    }
+
+
+    public void setDirectZip(boolean directZip) {
+
+        this.directZip = directZip;
+    }
+
+
+    /**
+     * @return the deflate compression level (1-9), -1 for the default level or 0 for storing the ZIP entries
+     * without compression
+     */
+    public int getCompressionLevel() {
+
+        return compressionLevel;
+    }
+
+
+    public void setCompressionLevel(int compressionLevel) {
+
+        this.compressionLevel = compressionLevel;
+    }
+
+
+    /**
+     * @return the number of ZIP entries compressed concurrently. If greater than 1, the compressed entries are
+     * kept in scratch buffers until the archive is assembled.
+     */
+    public int getCompressionThreads() {
+
+        return compressionThreads;
+    }
+
+
+    public void setCompressionThreads(int compressionThreads) {
+
+        this.compressionThreads = compressionThreads;
+    }
+
+
+    /**
+     * @return the size in bytes of the buffers used for reading and writing ZIP archive data
+     */
+    public int getZipBufferSize() {
+
+        return zipBufferSize;
+    }
+
+
+    public void setZipBufferSize(int zipBufferSize) {
+
+        this.zipBufferSize = zipBufferSize;
+    }
+
+
+    /**
+     * @return true if only the changes since the last export of the same project and operation should be read
+     * from the datastore and merged into the resources stored in the cache folder
+     */
+    public boolean isIncremental() {
+
+        return incremental;
+    }
+
+
+    public void setIncremental(boolean incremental) {
+
+        this.incremental = incremental;
+    }
+
+
+    /**
+     * @return the folder for data kept between exports or null if a folder inside the temp folder should be used
+     */
+    public String getCacheFolderPath() {
+
+        return cacheFolderPath;
+    }
+
+
+    public void setCacheFolderPath(String cacheFolderPath) {
+
+        this.cacheFolderPath = cacheFolderPath;
+    }
+
+
+    /**
+     * @return true if the decoded resources should be kept in the cache folder, so that subsequent exports only
+     * fetch the IDs and revisions of unchanged resources
+     */
+    public boolean isResourceCache() {
+
+        return resourceCache;
+    }
+
+
+    public void setResourceCache(boolean resourceCache) {
+
+        this.resourceCache = resourceCache;
+    }
+
+
+    /**
+     * @return the maximum size in bytes of the resources kept in the resource cache of a project. If it is
+     * exceeded, the least recently used resources are removed.
+     */
+    public long getResourceCacheSize() {
+
+        return resourceCacheSize;
+    }
+
+
+    public void setResourceCacheSize(long resourceCacheSize) {
+
+        this.resourceCacheSize = resourceCacheSize;
+    }
+
+
+    /**
+     * @return the maximum number of operations written to their ZIP archives concurrently in a batch export
+     */
+    public int getOperationThreads() {
+
+        return operationThreads;
+    }
+
+
+    public void setOperationThreads(int operationThreads) {
+
+        this.operationThreads = operationThreads;
+    }
+
+
+    /**
+     * @return the restrictions of the exported resources by type, bounding box and modification date
+     */
+    public ResourceFilter getFilter() {
+
+        return filter;
+    }
+
+
+    public void setFilter(ResourceFilter filter) {
+
+        this.filter = filter;
+    }
+
+
+    /**
+     * @return true if an index on the resource type is created in the project database before resources are
+     * filtered by type
+     */
+    public boolean isCreateTypeIndex() {
+
+        return createTypeIndex;
+    }
+
+
+    public void setCreateTypeIndex(boolean createTypeIndex) {
+
+        this.createTypeIndex = createTypeIndex;
+    }
+}
@@ -0,0 +1,156 @@
+package org.dainst.idaifield.exporter;
+
+import org.dainst.idaifield.cache.ResourceSerializer;
+import org.dainst.idaifield.datastore.ResourceHandler;
+import org.dainst.idaifield.model.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The resources exported for a project and operation, together with the update sequence of the project database
+ * they correspond to. Stored in a binary file, so that the next incremental export only needs to read the changes
+ * since that sequence.
+ */
+class ExportSnapshot {
+
+    private static final int formatVersion = 1;
+
+    private final File file;
+    private final Map<String, Resource> resources = new LinkedHashMap<>();
+    private String lastSequence;
+
+
+    private ExportSnapshot(File file) {
+
+        this.file = file;
+    }
+
+
+    /**
+     * @return the stored snapshot or an empty snapshot without sequence if the file does not exist or cannot be
+     * read, so that a full export is done
+     */
+    static ExportSnapshot load(File file) {
+
+        ExportSnapshot snapshot = new ExportSnapshot(file);
+        if (!file.exists()) return snapshot;
+
+        long fileLength = file.length();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != formatVersion) return snapshot;
+
+            String lastSequence = input.readUTF();
+            if (lastSequence.isEmpty()) throw new IOException("Missing update sequence");
+
+            int resourceCount = input.readInt();
+            if (resourceCount < 0 || resourceCount > fileLength) {
+                throw new IOException("Invalid resource count " + resourceCount);
+            }
+
+            for (int i = 0; i < resourceCount; i++) {
+                Resource resource = ResourceSerializer.read(input, fileLength);
+                if (resource.getId() == null) throw new IOException("Missing resource ID");
+                snapshot.put(resource);
+            }
+
+            if (input.read() != -1) throw new IOException("Unexpected data at end of file");
+
+            snapshot.lastSequence = lastSequence;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to read export snapshot " + file.getAbsolutePath() + ": " + e.getMessage());
+            snapshot.resources.clear();
+        }
+
+        return snapshot;
+    }
+
+
+    /**
+     * Writes the snapshot to a temporary file first, which then replaces the stored snapshot. The name of the
+     * temporary file is unique, so that concurrent exports do not write to the same file.
+     */
+    void save() throws IOException {
+
+        File parentFolder = file.getAbsoluteFile().getParentFile();
+        if (!parentFolder.exists() && !parentFolder.mkdirs()) {
+            throw new IOException("Failed to create folder " + parentFolder.getAbsolutePath());
+        }
+
+        File tempFile = File.createTempFile(file.getName() + ".", ".tmp", parentFolder);
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)))) {
+                output.writeInt(formatVersion);
+                output.writeUTF(lastSequence);
+                output.writeInt(resources.size());
+                for (Resource resource : resources.values()) {
+                    ResourceSerializer.write(resource, output);
+                }
+            }
+
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+
+    /**
+     * @return the update sequence the snapshot corresponds to or null if the snapshot is empty
+     */
+    String getLastSequence() {
+
+        return lastSequence;
+    }
+
+
+    void setLastSequence(String lastSequence) {
+
+        this.lastSequence = lastSequence;
+    }
+
+
+    void put(Resource resource) {
+
+        resources.put(resource.getId(), resource);
+    }
+
+
+    void putAll(List<Resource> resources) {
+
+        for (Resource resource : resources) {
+            put(resource);
+        }
+    }
+
+
+    void remove(String resourceId) {
+
+        resources.remove(resourceId);
+    }
+
+
+    /**
+     * Passes the resources to the handler in batches of the given size.
+     */
+    void read(ResourceHandler handler, int batchSize) throws Exception {
+
+        ShapefileExporter.readBatches(resources.values(), handler, batchSize);
+    }
+}
@@ -3,12 +3,13 @@ package org.dainst.idaifield.exporter;
 import org.dainst.idaifield.model.Geometry;
 import org.locationtech.jts.geom.*;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 
 /**
+ * Builds JTS geometries whose coordinate sequences are backed directly by the ordinate arrays of the geometry
+ * model. Rings which are not closed are closed virtually, without copying their coordinates.
+ *
  * @author Thomas Kleinke
  */
 class GeometryBuilder {
@@ -16,20 +17,42 @@ class GeometryBuilder {
     private GeometryFactory geometryFactory;
 
 
-    GeometryBuilder(GeometryFactory geometryFactory) {
+    GeometryBuilder() {
 
-        this.geometryFactory = geometryFactory;
+        this.geometryFactory = new GeometryFactory(OrdinateSequenceFactory.instance());
     }
 
 
-    MultiPoint buildMultiPointGeometry(Geometry geometry) {
+    /**
+     * @return the geometry matching the geometry type or null if the geometry is empty
+     */
+    org.locationtech.jts.geom.Geometry buildGeometry(Geometry geometry) {
+
+        switch(geometry.getType()) {
+            case MULTIPOINT:
+                return buildMultiPointGeometry(geometry);
+            case MULTIPOLYLINE:
+                return buildMultiPolylineGeometry(geometry);
+            case MULTIPOLYGON:
+                return buildMultiPolygonGeometry(geometry);
+            default:
+                return null;
+        }
+    }
+
+
+    GeometryFactory getGeometryFactory() {
 
-        double[][] coordinates = geometry.getCoordinates()[0][0];
+        return geometryFactory;
+    }
+
+
+    MultiPoint buildMultiPointGeometry(Geometry geometry) {
 
-        Point[] points = new Point[coordinates.length];
+        Point[] points = new Point[geometry.getVertexCount()];
 
-        for (int i = 0; i < coordinates.length; i++) {
-            points[i] = geometryFactory.createPoint(createPoint(coordinates[i]));
+        for (int i = 0; i < points.length; i++) {
+            points[i] = geometryFactory.createPoint(createSequence(geometry, i, 1, false));
         }
 
         return geometryFactory.createMultiPoint(points);
@@ -38,20 +61,14 @@ class GeometryBuilder {
 
     MultiLineString buildMultiPolylineGeometry(Geometry geometry) {
 
-        double[][][] coordinates = geometry.getCoordinates()[0];
+        int[] ringOffsets = geometry.getRingOffsets();
 
-        LineString[] polylines = new LineString[coordinates.length];
+        LineString[] polylines = new LineString[geometry.getRingCount()];
 
-        for (int i = 0; i < coordinates.length; i++) {
-            double[][] polylineCoordinates = coordinates[i];
-            Coordinate[] points = new Coordinate[polylineCoordinates.length];
-
-            for (int j = 0; j < polylineCoordinates.length; j++) {
-                double[] pointCoordinates = polylineCoordinates[j];
-                points[j] = createPoint(pointCoordinates);
-            }
-
-            polylines[i] = geometryFactory.createLineString(points);
+        for (int i = 0; i < polylines.length; i++) {
+            polylines[i] = geometryFactory.createLineString(
+                    createSequence(geometry, ringOffsets[i], ringOffsets[i + 1] - ringOffsets[i], false)
+            );
         }
 
         return geometryFactory.createMultiLineString(polylines);
@@ -60,26 +77,22 @@ class GeometryBuilder {
 
     MultiPolygon buildMultiPolygonGeometry(Geometry geometry) {
 
-        double[][][][] coordinates = geometry.getCoordinates();
-
-        Polygon[] polygons = new Polygon[coordinates.length];
-
-        for (int i = 0; i < coordinates.length; i++) {
-            double[][][] polygonCoordinates = coordinates[i];
-            LinearRing[] linearRings = new LinearRing[polygonCoordinates.length];
+        int[] partOffsets = geometry.getPartOffsets();
+        int[] ringOffsets = geometry.getRingOffsets();
 
-            for (int j = 0; j < polygonCoordinates.length; j++) {
-                double[][] linearRingCoordinates = polygonCoordinates[j];
-                List<Coordinate> points = new ArrayList<>();
+        Polygon[] polygons = new Polygon[geometry.getPartCount()];
 
-                for (double[] pointCoordinates : linearRingCoordinates) {
-                    points.add(createPoint(pointCoordinates));
-                }
+        for (int i = 0; i < polygons.length; i++) {
+            LinearRing[] linearRings = new LinearRing[partOffsets[i + 1] - partOffsets[i]];
 
-                closeRingIfNecessary(points);
+            for (int j = 0; j < linearRings.length; j++) {
+                int ring = partOffsets[i] + j;
+                int start = ringOffsets[ring];
+                int count = ringOffsets[ring + 1] - start;
 
-                Coordinate[] pointsArray = new Coordinate[points.size()];
-                linearRings[j] = geometryFactory.createLinearRing(points.toArray(pointsArray));
+                linearRings[j] = geometryFactory.createLinearRing(
+                        createSequence(geometry, start, count, !isClosed(geometry, start, count))
+                );
             }
 
             if (linearRings.length == 0) return null;
@@ -96,22 +109,23 @@ class GeometryBuilder {
     }
 
 
-    private static Coordinate createPoint(double[] coordinates) {
+    /**
+     * @param virtuallyClosed true if the first vertex should be repeated at the end of the sequence
+     */
+    private static CoordinateSequence createSequence(Geometry geometry, int start, int count,
+                                                     boolean virtuallyClosed) {
 
-        Coordinate coordinate = new Coordinate();
-        coordinate.setX(coordinates[0]);
-        coordinate.setY(coordinates[1]);
-        if (coordinates.length == 3) coordinate.setZ(coordinates[2]);
-
-        return coordinate;
+        return new OrdinateSequence(geometry.getOrdinates(), geometry.getDimension(), start, count,
+                virtuallyClosed);
     }
 
 
-    private static void closeRingIfNecessary(List<Coordinate> points) {
+    private static boolean isClosed(Geometry geometry, int start, int count) {
 
-        if (points.get(0).x != points.get(points.size() - 1).x
-                || points.get(0).y != points.get(points.size() - 1).y) {
-            points.add(new Coordinate(points.get(0).x, points.get(0).y));
-        }
+        if (count == 0) return true;
+
+        int end = start + count - 1;
+
+        return geometry.getX(start) == geometry.getX(end) && geometry.getY(start) == geometry.getY(end);
     }
 }
@@ -0,0 +1,24 @@
+package org.dainst.idaifield.exporter;
+
+import org.dainst.idaifield.model.Resource;
+
+import java.util.List;
+
+
+/**
+ * Writes the features of a single geometry type.
+ */
+interface LayerWriter {
+
+    void write(List<Resource> resources, GeometryBuilder geometryBuilder) throws Exception;
+
+    /**
+     * Completes the layer after the last resources have been written.
+     */
+    void close() throws Exception;
+
+    /**
+     * Releases all resources of the layer without completing it and removes any partial output.
+     */
+    void abort();
+}
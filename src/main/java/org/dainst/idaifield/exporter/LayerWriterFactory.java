@@ -0,0 +1,9 @@
+package org.dainst.idaifield.exporter;
+
+import org.dainst.idaifield.model.GeometryType;
+
+
+interface LayerWriterFactory {
+
+    LayerWriter create(GeometryType geometryType) throws Exception;
+}
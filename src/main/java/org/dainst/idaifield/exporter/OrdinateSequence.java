@@ -0,0 +1,187 @@
+package org.dainst.idaifield.exporter;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+
+
+/**
+ * Coordinate sequence backed by a range of vertices of a packed ordinate array, as used by the geometry model.
+ * The ordinates are not copied, so creating a sequence does not allocate anything per vertex.
+ *
+ * If the sequence is virtually closed, it contains one additional vertex after the last one of the range, which
+ * is the first vertex of the range. This closes rings without copying their ordinates.
+ */
+class OrdinateSequence implements CoordinateSequence {
+
+    private final double[] ordinates;
+    private final int dimension;
+    private final int start;
+    private final int count;
+    private final boolean virtuallyClosed;
+
+
+    /**
+     * @param start the index of the first vertex of the range
+     * @param count the number of vertices of the range
+     */
+    OrdinateSequence(double[] ordinates, int dimension, int start, int count, boolean virtuallyClosed) {
+
+        this.ordinates = ordinates;
+        this.dimension = dimension;
+        this.start = start;
+        this.count = count;
+        this.virtuallyClosed = virtuallyClosed && count > 0;
+    }
+
+
+    OrdinateSequence(int size, int dimension) {
+
+        this(new double[size * dimension], dimension, 0, size, false);
+    }
+
+
+    @Override
+    public int getDimension() {
+
+        return dimension;
+    }
+
+
+    @Override
+    public Coordinate getCoordinate(int index) {
+
+        return getCoordinateCopy(index);
+    }
+
+
+    @Override
+    public Coordinate getCoordinateCopy(int index) {
+
+        return new Coordinate(getX(index), getY(index), getZ(index));
+    }
+
+
+    @Override
+    public void getCoordinate(int index, Coordinate coordinate) {
+
+        coordinate.setX(getX(index));
+        coordinate.setY(getY(index));
+        coordinate.setZ(getZ(index));
+    }
+
+
+    @Override
+    public double getX(int index) {
+
+        return ordinates[getOffset(index)];
+    }
+
+
+    @Override
+    public double getY(int index) {
+
+        return ordinates[getOffset(index) + 1];
+    }
+
+
+    @Override
+    public double getZ(int index) {
+
+        return dimension > 2 ? ordinates[getOffset(index) + 2] : Double.NaN;
+    }
+
+
+    @Override
+    public double getOrdinate(int index, int ordinateIndex) {
+
+        return ordinateIndex < dimension ? ordinates[getOffset(index) + ordinateIndex] : Double.NaN;
+    }
+
+
+    @Override
+    public int size() {
+
+        return virtuallyClosed ? count + 1 : count;
+    }
+
+
+    /**
+     * Writes through to the backing array. Setting an ordinate of the virtual closing vertex sets the ordinate of
+     * the first vertex.
+     */
+    @Override
+    public void setOrdinate(int index, int ordinateIndex, double value) {
+
+        if (ordinateIndex < dimension) ordinates[getOffset(index) + ordinateIndex] = value;
+    }
+
+
+    @Override
+    public Coordinate[] toCoordinateArray() {
+
+        Coordinate[] coordinates = new Coordinate[size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = getCoordinateCopy(i);
+        }
+
+        return coordinates;
+    }
+
+
+    @Override
+    public Envelope expandEnvelope(Envelope envelope) {
+
+        for (int i = 0; i < count; i++) {
+            envelope.expandToInclude(getX(i), getY(i));
+        }
+
+        return envelope;
+    }
+
+
+    /**
+     * @deprecated overrides the deprecated method of the interface, use {@link #copy()} instead
+     */
+    @Deprecated
+    @Override
+    public Object clone() {
+
+        return copy();
+    }
+
+
+    /**
+     * @return a sequence with its own ordinate array, containing the closing vertex as a regular vertex
+     */
+    @Override
+    public OrdinateSequence copy() {
+
+        OrdinateSequence copy = new OrdinateSequence(size(), dimension);
+        for (int i = 0; i < size(); i++) {
+            System.arraycopy(ordinates, getOffset(i), copy.ordinates, i * dimension, dimension);
+        }
+
+        return copy;
+    }
+
+
+    @Override
+    public String toString() {
+
+        StringBuilder result = new StringBuilder("(");
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) result.append(", ");
+            result.append(getX(i)).append(' ').append(getY(i));
+            if (dimension > 2) result.append(' ').append(getZ(i));
+        }
+
+        return result.append(')').toString();
+    }
+
+
+    private int getOffset(int index) {
+
+        return (virtuallyClosed && index == count ? start : start + index) * dimension;
+    }
+}
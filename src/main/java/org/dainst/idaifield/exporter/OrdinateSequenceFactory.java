@@ -0,0 +1,69 @@
+package org.dainst.idaifield.exporter;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFactory;
+
+
+/**
+ * Creates {@link OrdinateSequence}s for geometries derived from the geometries built by the {@link GeometryBuilder}.
+ */
+class OrdinateSequenceFactory implements CoordinateSequenceFactory {
+
+    private static final OrdinateSequenceFactory instance = new OrdinateSequenceFactory();
+
+
+    private OrdinateSequenceFactory() {}
+
+
+    static OrdinateSequenceFactory instance() {
+
+        return instance;
+    }
+
+
+    @Override
+    public CoordinateSequence create(Coordinate[] coordinates) {
+
+        if (coordinates == null) return new OrdinateSequence(0, 2);
+
+        int dimension = 2;
+        for (Coordinate coordinate : coordinates) {
+            if (!Double.isNaN(coordinate.getZ())) dimension = 3;
+        }
+
+        OrdinateSequence sequence = new OrdinateSequence(coordinates.length, dimension);
+        for (int i = 0; i < coordinates.length; i++) {
+            sequence.setOrdinate(i, CoordinateSequence.X, coordinates[i].getX());
+            sequence.setOrdinate(i, CoordinateSequence.Y, coordinates[i].getY());
+            sequence.setOrdinate(i, CoordinateSequence.Z, coordinates[i].getZ());
+        }
+
+        return sequence;
+    }
+
+
+    @Override
+    public CoordinateSequence create(CoordinateSequence coordinateSequence) {
+
+        if (coordinateSequence instanceof OrdinateSequence) return ((OrdinateSequence) coordinateSequence).copy();
+
+        int dimension = Math.min(Math.max(coordinateSequence.getDimension(), 2), 3);
+
+        OrdinateSequence sequence = new OrdinateSequence(coordinateSequence.size(), dimension);
+        for (int i = 0; i < coordinateSequence.size(); i++) {
+            for (int j = 0; j < dimension; j++) {
+                sequence.setOrdinate(i, j, coordinateSequence.getOrdinate(i, j));
+            }
+        }
+
+        return sequence;
+    }
+
+
+    @Override
+    public CoordinateSequence create(int size, int dimension) {
+
+        return new OrdinateSequence(size, Math.min(Math.max(dimension, 2), 3));
+    }
+}
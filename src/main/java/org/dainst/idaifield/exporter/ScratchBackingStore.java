@@ -0,0 +1,41 @@
+package org.dainst.idaifield.exporter;
+
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Keeps the compressed entries of a parallel compression worker in a scratch buffer until they are assembled into
+ * the archive. Small entries stay in memory, larger ones are moved to a temporary file by the buffer.
+ */
+class ScratchBackingStore implements ScatterGatherBackingStore {
+
+    private final ScratchBuffer buffer = new ScratchBuffer();
+
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+
+        return buffer.getInputStream();
+    }
+
+
+    @Override
+    public void writeOut(byte[] data, int offset, int length) throws IOException {
+
+        buffer.write(data, offset, length);
+    }
+
+
+    @Override
+    public void closeForWriting() {}
+
+
+    @Override
+    public void close() throws IOException {
+
+        buffer.clear();
+    }
+}
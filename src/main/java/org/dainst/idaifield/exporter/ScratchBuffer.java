@@ -0,0 +1,233 @@
+package org.dainst.idaifield.exporter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Byte buffer which grows in fixed-size chunks, so that its content is never copied when it grows. Once the
+ * content exceeds the memory limit, it is moved to a temporary file in the system temp folder and all further
+ * data is appended to that file, so that the heap use of the buffer is bounded.
+ *
+ * The content is read once via the input stream. Closing the stream releases the buffer and deletes the
+ * temporary file.
+ */
+class ScratchBuffer {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final long DEFAULT_MEMORY_LIMIT = 4 * CHUNK_SIZE;
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private final long memoryLimit;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private int chunkPosition = CHUNK_SIZE;
+    private long size;
+
+    private File file;
+    private OutputStream fileOutput;
+
+
+    ScratchBuffer() {
+
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+
+    /**
+     * @param memoryLimit the number of bytes kept in memory before the content is moved to a temporary file
+     */
+    ScratchBuffer(long memoryLimit) {
+
+        this.memoryLimit = memoryLimit;
+    }
+
+
+    void write(ByteBuffer buffer) throws IOException {
+
+        if (fileOutput == null && size + buffer.remaining() > memoryLimit) moveToFile();
+
+        if (fileOutput != null) {
+            writeToFile(buffer);
+        } else {
+            writeToMemory(buffer);
+        }
+    }
+
+
+    void write(byte[] data) throws IOException {
+
+        write(ByteBuffer.wrap(data));
+    }
+
+
+    void write(byte[] data, int offset, int length) throws IOException {
+
+        write(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    long size() {
+
+        return size;
+    }
+
+
+    /**
+     * @return true if the content has been moved to a temporary file
+     */
+    boolean isFileBacked() {
+
+        return file != null;
+    }
+
+
+    /**
+     * @return a stream reading the current content of the buffer. Closing it releases the buffer.
+     */
+    InputStream getInputStream() throws IOException {
+
+        if (fileOutput != null) {
+            fileOutput.close();
+            fileOutput = null;
+        }
+
+        InputStream inputStream = file != null ? new FileInputStream(file) : getMemoryInputStream();
+
+        return new FilterInputStream(inputStream) {
+
+            @Override
+            public void close() throws IOException {
+
+                try {
+                    super.close();
+                } finally {
+                    clear();
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Discards the content and deletes the temporary file.
+     */
+    void clear() throws IOException {
+
+        chunks.clear();
+        chunkPosition = CHUNK_SIZE;
+        size = 0;
+
+        try {
+            if (fileOutput != null) fileOutput.close();
+        } finally {
+            fileOutput = null;
+            if (file != null) Files.deleteIfExists(file.toPath());
+            file = null;
+        }
+    }
+
+
+    private void writeToMemory(ByteBuffer buffer) {
+
+        while (buffer.hasRemaining()) {
+            if (chunkPosition == CHUNK_SIZE) addChunk();
+
+            int length = Math.min(buffer.remaining(), CHUNK_SIZE - chunkPosition);
+            buffer.get(chunks.get(chunks.size() - 1), chunkPosition, length);
+            chunkPosition += length;
+            size += length;
+        }
+    }
+
+
+    private void writeToFile(ByteBuffer buffer) throws IOException {
+
+        int length = buffer.remaining();
+
+        if (buffer.hasArray()) {
+            fileOutput.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+        } else {
+            byte[] data = new byte[length];
+            buffer.get(data);
+            fileOutput.write(data);
+        }
+
+        size += length;
+    }
+
+
+    /**
+     * Writes the chunks to a new temporary file and releases them.
+     */
+    private void moveToFile() throws IOException {
+
+        file = File.createTempFile("shapefile-tool-", ".scratch");
+        fileOutput = new BufferedOutputStream(Files.newOutputStream(file.toPath()), FILE_BUFFER_SIZE);
+
+        for (int i = 0; i < chunks.size(); i++) {
+            fileOutput.write(chunks.get(i), 0, getChunkLength(i));
+        }
+
+        chunks.clear();
+        chunkPosition = CHUNK_SIZE;
+    }
+
+
+    private InputStream getMemoryInputStream() {
+
+        return new InputStream() {
+
+            private final byte[] singleByte = new byte[1];
+            private int chunkIndex = 0;
+            private int position = 0;
+
+            @Override
+            public int read() {
+
+                return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] data, int offset, int length) {
+
+                if (length == 0) return 0;
+
+                while (chunkIndex < chunks.size() && position == getChunkLength(chunkIndex)) {
+                    chunkIndex++;
+                    position = 0;
+                }
+                if (chunkIndex == chunks.size()) return -1;
+
+                int count = Math.min(length, getChunkLength(chunkIndex) - position);
+                System.arraycopy(chunks.get(chunkIndex), position, data, offset, count);
+                position += count;
+
+                return count;
+            }
+        };
+    }
+
+
+    private int getChunkLength(int chunkIndex) {
+
+        return chunkIndex < chunks.size() - 1 ? CHUNK_SIZE : chunkPosition;
+    }
+
+
+    private void addChunk() {
+
+        chunks.add(new byte[CHUNK_SIZE]);
+        chunkPosition = 0;
+    }
+}
@@ -0,0 +1,65 @@
+package org.dainst.idaifield.exporter;
+
+import org.dainst.idaifield.model.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The attributes written to the shapefiles in addition to the geometry, in the order of the shapefile schema.
+ */
+enum ShapefileAttribute {
+
+    ID("id", "id"),
+    IDENTIFIER("identifier", "identifier"),
+    SHORT_DESCRIPTION("shortdesc", "shortDescription"),
+    TYPE("type", "type");
+
+
+    private final String attributeName;
+    private final String resourceField;
+
+
+    ShapefileAttribute(String attributeName, String resourceField) {
+
+        this.attributeName = attributeName;
+        this.resourceField = resourceField;
+    }
+
+
+    String getAttributeName() {
+
+        return attributeName;
+    }
+
+
+    String getValue(Resource resource) {
+
+        switch (this) {
+            case ID:
+                return resource.getId();
+            case IDENTIFIER:
+                return resource.getIdentifier();
+            case SHORT_DESCRIPTION:
+                return resource.getShortDescription() != null ? resource.getShortDescription() : "";
+            default:
+                return resource.getType();
+        }
+    }
+
+
+    /**
+     * @return the names of the resource fields the attribute values are taken from
+     */
+    static List<String> getResourceFields() {
+
+        List<String> fields = new ArrayList<>();
+
+        for (ShapefileAttribute attribute : values()) {
+            fields.add(attribute.resourceField);
+        }
+
+        return fields;
+    }
+}
@@ -1,13 +1,26 @@
 package org.dainst.idaifield.exporter;
 
 import org.apache.commons.io.FileUtils;
+import org.dainst.idaifield.cache.ResourceCache;
 import org.dainst.idaifield.datastore.Datastore;
-import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.datastore.ResourceFilter;
+import org.dainst.idaifield.datastore.ResourceHandler;
 import org.dainst.idaifield.model.Resource;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -15,13 +28,167 @@ import java.util.Map;
  */
 public class ShapefileExporter {
 
-    public static void run(String projectName, String outputFilePath, String tempFolderPath,
-                           String operationId, String epsg) throws Exception {
+    interface ResourceSource {
 
-        String outputFolderPath = outputFilePath.substring(0, outputFilePath.lastIndexOf(File.separator));
-        String outputFileName = outputFilePath.substring(
-                outputFilePath.lastIndexOf(File.separator), outputFilePath.lastIndexOf('.')
-        );
+        void read(ResourceHandler handler) throws Exception;
+    }
+
+
+    public static void run(Datastore datastore, String projectName, String outputFilePath, String tempFolderPath,
+                           String operationId, String epsg, ExportOptions options) throws Exception {
+
+        List<String> operationIds = operationId.equals("project") ? null : Collections.singletonList(operationId);
+
+        createTypeIndex(datastore, projectName, options);
+
+        try (ResourceCache resourceCache = openResourceCache(projectName, tempFolderPath, options)) {
+            ResourceSource resourceSource = options.isIncremental()
+                    ? readIncrementally(datastore, projectName, tempFolderPath, operationIds, operationId,
+                            resourceCache, options)
+                    : handler -> readResources(datastore, projectName, operationIds, resourceCache,
+                            options.getFilter(), handler);
+
+            export(resourceSource, outputFilePath, tempFolderPath, epsg, options);
+        }
+    }
+
+
+    /**
+     * Exports several operations in one pass. The resources of all operations are fetched together and
+     * partitioned by their isRecordedIn relation in memory. Each operation is then written to a separate ZIP
+     * archive, named after the output file and the operation ID. The archives are written concurrently.
+     *
+     * @param operationIds the operations to export or null for all operations of the project
+     */
+    public static void runBatch(Datastore datastore, String projectName, String outputFilePath,
+                                String tempFolderPath, List<String> operationIds, String epsg,
+                                ExportOptions options) throws Exception {
+
+        Map<String, List<Resource>> partitions;
+
+        createTypeIndex(datastore, projectName, options);
+
+        try (ResourceCache resourceCache = openResourceCache(projectName, tempFolderPath, options)) {
+            ResourceSource resourceSource = options.isIncremental()
+                    ? readIncrementally(datastore, projectName, tempFolderPath, operationIds,
+                            getBatchSnapshotName(operationIds), resourceCache, options)
+                    : handler -> readResources(datastore, projectName, operationIds, resourceCache,
+                            options.getFilter(), handler);
+
+            partitions = partitionByOperation(resourceSource, operationIds);
+        }
+
+        String outputFolderPath = getOutputFolderPath(outputFilePath);
+        String outputFileName = getOutputFileName(outputFilePath);
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.getOperationThreads());
+
+        try {
+            List<Future<Void>> tasks = new ArrayList<>();
+
+            for (Map.Entry<String, List<Resource>> partition : partitions.entrySet()) {
+                String operationFilePath = outputFolderPath + File.separator + outputFileName + "_"
+                        + toFileName(partition.getKey()) + ".zip";
+
+                tasks.add(executor.submit(() -> {
+                    export(handler -> readBatches(partition.getValue(), handler, options.getTaskSize()),
+                            operationFilePath, tempFolderPath, epsg, options);
+                    return null;
+                }));
+            }
+
+            for (Future<Void> task : tasks) {
+                getResult(task);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Passes the resources to the handler in batches of the given size.
+     */
+    static void readBatches(Collection<Resource> resources, ResourceHandler handler,
+                            int batchSize) throws Exception {
+
+        List<Resource> batch = new ArrayList<>(batchSize);
+
+        for (Resource resource : resources) {
+            batch.add(resource);
+            if (batch.size() == batchSize) {
+                handler.handle(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) handler.handle(batch);
+    }
+
+
+    private static void export(ResourceSource resourceSource, String outputFilePath, String tempFolderPath,
+                               String epsg, ExportOptions options) throws Exception {
+
+        String outputFolderPath = getOutputFolderPath(outputFilePath);
+        String outputFileName = getOutputFileName(outputFilePath);
+
+        if (options.isDirectZip()) {
+            writeZipArchive(resourceSource, outputFolderPath, outputFileName, epsg, options);
+        } else {
+            writeShapefiles(resourceSource, outputFolderPath, outputFileName, tempFolderPath, epsg, options);
+        }
+    }
+
+
+    /**
+     * Assigns each resource to the operations it is recorded in and each operation resource to its own
+     * operation.
+     *
+     * @param operationIds the operations to partition the resources by or null for all operations the resources
+     *                     are recorded in
+     * @return the resources mapped by operation ID
+     */
+    static Map<String, List<Resource>> partitionByOperation(ResourceSource resourceSource,
+                                                            List<String> operationIds) throws Exception {
+
+        Map<String, List<Resource>> partitions = new LinkedHashMap<>();
+        if (operationIds != null) {
+            for (String operationId : operationIds) {
+                partitions.put(operationId, new ArrayList<>());
+            }
+        }
+
+        List<Resource> unrecordedResources = new ArrayList<>();
+
+        resourceSource.read(resources -> {
+            for (Resource resource : resources) {
+                if (resource.getRecordedInIds().isEmpty()) unrecordedResources.add(resource);
+
+                for (String operationId : resource.getRecordedInIds()) {
+                    if (operationIds == null) {
+                        partitions.computeIfAbsent(operationId, id -> new ArrayList<>()).add(resource);
+                    } else if (partitions.containsKey(operationId)) {
+                        partitions.get(operationId).add(resource);
+                    }
+                }
+            }
+        });
+
+        for (Resource resource : unrecordedResources) {
+            List<Resource> partition = partitions.get(resource.getId());
+            if (partition != null) partition.add(resource);
+        }
+
+        return partitions;
+    }
+
+
+    /**
+     * Writes the shapefiles to the temp folder and packs them into the ZIP archive afterwards.
+     */
+    private static void writeShapefiles(ResourceSource resourceSource, String outputFolderPath,
+                                        String outputFileName, String tempFolderPath, String epsg,
+                                        ExportOptions options) throws Exception {
 
         File shapefileFolder = createShapefileFolder(tempFolderPath, outputFileName);
         if (shapefileFolder == null) {
@@ -30,17 +197,222 @@ public class ShapefileExporter {
         }
 
         try {
-            Map<GeometryType, List<Resource>> resources = Datastore.getResourcesWithGeometry(
-                    projectName, operationId
-            );
-            ShapefileWriter.write(shapefileFolder, resources, epsg);
-            ZipArchiveBuilder.buildZipArchive(shapefileFolder, outputFolderPath);
+            try (ShapefileWriter shapefileWriter = new ShapefileWriter(
+                    geometryType -> new ShapefileLayerWriter(shapefileFolder, geometryType, epsg), options)) {
+                resourceSource.read(shapefileWriter::write);
+                shapefileWriter.finish();
+            }
+            ZipArchiveBuilder.buildZipArchive(shapefileFolder, outputFolderPath, options);
         } finally {
             FileUtils.deleteDirectory(shapefileFolder);
         }
     }
 
 
+    /**
+     * Writes the shapefile components directly into the ZIP archive, without using the temp folder.
+     */
+    private static void writeZipArchive(ResourceSource resourceSource, String outputFolderPath,
+                                        String outputFileName, String epsg, ExportOptions options) throws Exception {
+
+        File zipFile = new File(outputFolderPath + File.separator + outputFileName + ".zip");
+        String projection = ZipLayerWriter.getProjection(epsg);
+
+        try (ZipArchiveBuilder zipArchiveBuilder = new ZipArchiveBuilder(zipFile, options);
+             ShapefileWriter shapefileWriter = new ShapefileWriter(
+                     geometryType -> new ZipLayerWriter(zipArchiveBuilder, outputFileName, geometryType, projection),
+                     options)) {
+            resourceSource.read(shapefileWriter::write);
+            shapefileWriter.finish();
+            zipArchiveBuilder.finish();
+        } catch (Exception e) {
+            FileUtils.deleteQuietly(zipFile);
+            throw e;
+        }
+    }
+
+
+    /**
+     * Brings the stored snapshot of the operations up to date and returns it as source of the resources to export.
+     * Without a snapshot, all resources are fetched via _find, starting from the current update sequence. Otherwise
+     * only the changes since the sequence of the snapshot are read. Changed resources are added to or replaced in
+     * the snapshot if they have a geometry, belong to one of the operations and match the type and bounding box of
+     * the filter, and removed from it if not. Each filter has its own snapshot.
+     *
+     * @param operationIds the exported operations or null for all resources of the project
+     * @param snapshotName the name of the snapshot file, identifying the exported operations
+     */
+    static ResourceSource readIncrementally(Datastore datastore, String projectName, String tempFolderPath,
+                                            List<String> operationIds, String snapshotName,
+                                            ResourceCache resourceCache, ExportOptions options) throws Exception {
+
+        ResourceFilter filter = options.getFilter();
+
+        ExportSnapshot snapshot = ExportSnapshot.load(new File(getCacheFolder(projectName, tempFolderPath, options),
+                toFileName(snapshotName) + getSnapshotSuffix(filter) + ".snapshot"));
+
+        if (snapshot.getLastSequence() == null) {
+            String sequence = datastore.getUpdateSequence(projectName);
+            readResources(datastore, projectName, operationIds, resourceCache, filter, snapshot::putAll);
+            snapshot.setLastSequence(sequence);
+        } else {
+            snapshot.setLastSequence(datastore.getChanges(projectName, snapshot.getLastSequence(),
+                    (documentId, resource) -> {
+                        if (resource != null && resource.getGeometry() != null
+                                && isPartOfOperations(resource, operationIds) && filter.matches(resource)) {
+                            snapshot.put(resource);
+                        } else {
+                            snapshot.remove(documentId);
+                        }
+                    }));
+        }
+
+        snapshot.save();
+
+        return handler -> snapshot.read(handler, options.getTaskSize());
+    }
+
+
+    private static boolean isPartOfOperations(Resource resource, List<String> operationIds) {
+
+        if (operationIds == null) return true;
+
+        for (String operationId : operationIds) {
+            if (resource.getId().equals(operationId) || resource.getRecordedInIds().contains(operationId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static void createTypeIndex(Datastore datastore, String projectName,
+                                        ExportOptions options) throws Exception {
+
+        if (options.isCreateTypeIndex() && options.getFilter().getTypes() != null) {
+            datastore.createTypeIndex(projectName);
+        }
+    }
+
+
+    /**
+     * Fetches the resources of the operations matching the filter, using the resource cache if it is not null.
+     */
+    private static void readResources(Datastore datastore, String projectName, List<String> operationIds,
+                                      ResourceCache resourceCache, ResourceFilter filter,
+                                      ResourceHandler handler) throws Exception {
+
+        if (resourceCache != null) {
+            datastore.getResourcesWithGeometry(projectName, operationIds, filter,
+                    ShapefileAttribute.getResourceFields(), resourceCache, handler);
+        } else {
+            datastore.getResourcesWithGeometry(projectName, operationIds, filter,
+                    ShapefileAttribute.getResourceFields(), handler);
+        }
+    }
+
+
+    /**
+     * @return the opened resource cache of the project or null if the resource cache is disabled
+     */
+    private static ResourceCache openResourceCache(String projectName, String tempFolderPath,
+                                                   ExportOptions options) throws Exception {
+
+        if (!options.isResourceCache()) return null;
+
+        return new ResourceCache(getCacheFolder(projectName, tempFolderPath, options),
+                options.getResourceCacheSize());
+    }
+
+
+    /**
+     * @return a snapshot name which is the same for every batch export of the same set of operations, containing
+     * the SHA-256 digest of the sorted operation IDs
+     */
+    static String getBatchSnapshotName(List<String> operationIds) {
+
+        if (operationIds == null) return "all-operations";
+
+        List<String> sortedIds = new ArrayList<>(operationIds);
+        Collections.sort(sortedIds);
+
+        return "operations-" + getDigest(String.join("\n", sortedIds));
+    }
+
+
+    /**
+     * @return the SHA-256 digest of the UTF-8 encoded value as hexadecimal string
+     */
+    private static String getDigest(String value) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) result.append(String.format("%02x", b));
+
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+
+    /**
+     * @return an empty string if the filter restricts neither types nor area, otherwise a suffix which is the same
+     * for every filter with the same types and bounding box, containing the SHA-256 digest of the filter key
+     */
+    static String getSnapshotSuffix(ResourceFilter filter) {
+
+        if (filter.getTypes() == null && filter.getBoundingBox() == null) return "";
+
+        return "-" + getDigest(filter.getKey());
+    }
+
+
+    private static void getResult(Future<Void> task) throws Exception {
+
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+
+    private static String getOutputFolderPath(String outputFilePath) {
+
+        return outputFilePath.substring(0, outputFilePath.lastIndexOf(File.separator));
+    }
+
+
+    private static String getOutputFileName(String outputFilePath) {
+
+        return outputFilePath.substring(outputFilePath.lastIndexOf(File.separator) + 1,
+                outputFilePath.lastIndexOf('.'));
+    }
+
+
+    /**
+     * @return the folder for the data of the project kept between exports
+     */
+    private static File getCacheFolder(String projectName, String tempFolderPath, ExportOptions options) {
+
+        String cacheFolderPath = options.getCacheFolderPath() != null
+                ? options.getCacheFolderPath()
+                : tempFolderPath + File.separator + "cache";
+
+        return new File(cacheFolderPath + File.separator + toFileName(projectName));
+    }
+
+
+    private static String toFileName(String name) {
+
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+
     private static File createShapefileFolder(String pathToTempFolder, String outputFileName) {
 
         File tempFolder = new File(pathToTempFolder + File.separator + outputFileName);
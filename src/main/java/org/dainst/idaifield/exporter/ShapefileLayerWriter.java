@@ -0,0 +1,175 @@
+package org.dainst.idaifield.exporter;
+
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.FileDataStoreFinder;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Writes the features of a single geometry type directly to a shapefile. The shapefile is created when the first
+ * feature is written, so no file is created for geometry types without features.
+ *
+ * Features are appended via a feature writer on the shapefile store, which streams them to the shapefile
+ * components on disk. The files are completed when the writer is closed, so a layer is written in a single
+ * transaction, without keeping its features in memory.
+ */
+class ShapefileLayerWriter implements LayerWriter {
+
+    private final File outputFile;
+    private final SimpleFeatureType featureType;
+
+    private ShapefileDataStore dataStore;
+    private FeatureWriter<SimpleFeatureType, SimpleFeature> featureWriter;
+
+
+    ShapefileLayerWriter(File folder, GeometryType geometryType, String epsg) throws Exception {
+
+        this.outputFile = new File(folder.getAbsolutePath() + File.separator
+                + geometryType.name().toLowerCase() + "s.shp");
+        this.featureType = createFeatureType(geometryType, epsg);
+    }
+
+
+    @Override
+    public void write(List<Resource> resources, GeometryBuilder geometryBuilder) throws Exception {
+
+        for (Resource resource : resources) {
+            write(resource, geometryBuilder);
+        }
+    }
+
+
+    private void write(Resource resource, GeometryBuilder geometryBuilder) throws Exception {
+
+        try {
+            Geometry geometry = geometryBuilder.buildGeometry(resource.getGeometry());
+            if (geometry == null) return;
+
+            if (featureWriter == null) open();
+
+            SimpleFeature feature = featureWriter.next();
+            feature.setAttribute(0, geometry);
+            setFeatureFields(resource, feature);
+            featureWriter.write();
+        } catch (Exception e) {
+            throw new Exception("Could not write feature for resource " + resource.getId()
+                    + " and featureType " + featureType.getTypeName(), e);
+        }
+    }
+
+
+    @Override
+    public void close() throws Exception {
+
+        if (featureWriter == null) return;
+
+        try {
+            featureWriter.close();
+        } catch (Exception e) {
+            throw new Exception("Failed to write shapefile " + outputFile.getName(), e);
+        } finally {
+            featureWriter = null;
+            dataStore.dispose();
+        }
+    }
+
+
+    @Override
+    public void abort() {
+
+        try {
+            if (featureWriter != null) featureWriter.close();
+        } catch (Exception e) {
+            // The files are deleted anyway
+        } finally {
+            featureWriter = null;
+            if (dataStore != null) dataStore.dispose();
+        }
+
+        deleteFiles();
+    }
+
+
+    private void open() throws Exception {
+
+        Map<String, Serializable> creationParams = new HashMap<>();
+        creationParams.put("url", DataUtilities.fileToURL(outputFile));
+
+        ShapefileDataStoreFactory factory = (ShapefileDataStoreFactory) FileDataStoreFinder.getDataStoreFactory("shp");
+        dataStore = (ShapefileDataStore) factory.createNewDataStore(creationParams);
+        dataStore.setCharset(Charset.forName("UTF-8"));
+        dataStore.createSchema(featureType);
+
+        featureWriter = dataStore.getFeatureWriterAppend(dataStore.getTypeNames()[0], Transaction.AUTO_COMMIT);
+    }
+
+
+    private void deleteFiles() {
+
+        String baseName = outputFile.getName().substring(0, outputFile.getName().lastIndexOf('.'));
+        File[] files = outputFile.getParentFile().listFiles(
+                (folder, fileName) -> fileName.startsWith(baseName + ".")
+        );
+        if (files == null) return;
+
+        for (File file : files) {
+            if (!file.delete()) System.err.println("Failed to delete file " + file.getAbsolutePath());
+        }
+    }
+
+
+    private static SimpleFeatureType createFeatureType(GeometryType geometryType,
+                                                       String epsg) throws Exception {
+
+        String geometryName = null;
+
+        switch(geometryType) {
+            case MULTIPOINT:
+                geometryName = "MultiPoint";
+                break;
+            case MULTIPOLYLINE:
+                geometryName = "MultiLineString";
+                break;
+            case MULTIPOLYGON:
+                geometryName = "MultiPolygon";
+                break;
+        }
+
+        String schema = "the_geom:" + geometryName;
+        if (epsg != null) schema += ":srid=" + epsg;
+        for (ShapefileAttribute attribute : ShapefileAttribute.values()) {
+            schema += "," + attribute.getAttributeName() + ":String";
+        }
+
+        return DataUtilities.createType(geometryType.name().toLowerCase(), schema);
+    }
+
+
+    /**
+     * Sets the attribute values on the feature of the feature writer. The attributes follow the geometry in the
+     * order of the feature type.
+     */
+    private static void setFeatureFields(Resource resource, SimpleFeature feature) {
+
+        ShapefileAttribute[] attributes = ShapefileAttribute.values();
+
+        for (int i = 0; i < attributes.length; i++) {
+            feature.setAttribute(i + 1, attributes[i].getValue(resource));
+        }
+    }
+}
@@ -2,201 +2,208 @@ package org.dainst.idaifield.exporter;
 
 import org.dainst.idaifield.model.GeometryType;
 import org.dainst.idaifield.model.Resource;
-import org.geotools.data.DataUtilities;
-import org.geotools.data.DefaultTransaction;
-import org.geotools.data.FileDataStoreFinder;
-import org.geotools.data.Transaction;
-import org.geotools.data.memory.MemoryDataStore;
-import org.geotools.data.shapefile.ShapefileDataStore;
-import org.geotools.data.shapefile.ShapefileDataStoreFactory;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.data.simple.SimpleFeatureStore;
-import org.geotools.feature.simple.SimpleFeatureBuilder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
-import org.locationtech.jts.geom.*;
-import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
-
-import java.io.File;
-import java.io.IOException;
-import java.io.Serializable;
-import java.nio.charset.Charset;
-import java.util.*;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 
 /**
+ * Writes resources to one shapefile layer per geometry type as they arrive. The resources of each geometry type are
+ * grouped into batches of the configured task size, and each batch is passed to the layer writer as one task.
+ *
+ * If more than one writer thread is configured, the shapefiles of the different geometry types are written
+ * concurrently. The batches of a geometry type are always written one after another in the order they were
+ * created, and the number of batches waiting to be written is limited.
+ *
  * @author Thomas Kleinke
  */
-class ShapefileWriter {
+class ShapefileWriter implements AutoCloseable {
+
+    private static final int MAX_PENDING_BATCHES_PER_THREAD = 2;
+
+    private final LayerWriterFactory layerWriterFactory;
+    private final int batchSize;
+    private final GeometryBuilder geometryBuilder;
+    private final Map<GeometryType, LayerWriter> layerWriters = new EnumMap<>(GeometryType.class);
+    private final Map<GeometryType, List<Resource>> batches = new EnumMap<>(GeometryType.class);
 
-    private static final String dataSchema =
-            "id:String,"
-            + "identifier:String,"
-            + "shortdesc:String,"
-            + "type:String";
+    private final ExecutorService executor;
+    private final Semaphore pendingBatches;
+    private final Map<GeometryType, CompletableFuture<Void>> tasks = new EnumMap<>(GeometryType.class);
 
 
-    static void write(File shapefileFolder, Map<GeometryType, List<Resource>> resources,
-                      String epsg) throws Exception {
+    ShapefileWriter(LayerWriterFactory layerWriterFactory, ExportOptions options) {
 
-        for (GeometryType geometryType : resources.keySet()) {
-            createFiles(resources.get(geometryType), shapefileFolder, geometryType, epsg);
+        this.layerWriterFactory = layerWriterFactory;
+        this.batchSize = options.getTaskSize();
+        this.geometryBuilder = new GeometryBuilder();
+
+        int threads = Math.min(options.getWriterThreads(), GeometryType.values().length);
+        if (threads > 1) {
+            this.executor = Executors.newFixedThreadPool(threads);
+            this.pendingBatches = new Semaphore(threads * MAX_PENDING_BATCHES_PER_THREAD);
+        } else {
+            this.executor = null;
+            this.pendingBatches = null;
         }
     }
 
 
-    private static void createFiles(List<Resource> resources, File folder,
-                                    GeometryType geometryType, String epsg) throws Exception {
-
-        String outputFilePath = folder.getAbsolutePath() + File.separator
-                + geometryType.name().toLowerCase() + "s.shp";
+    void write(List<Resource> resources) throws Exception {
 
-        File outputFile = new File(outputFilePath);
+        for (Resource resource : resources) {
+            GeometryType geometryType = resource.getGeometry().getType();
 
-        MemoryDataStore memoryDataStore = createMemoryDataStore(resources, geometryType, epsg);
+            List<Resource> batch = batches.get(geometryType);
+            if (batch == null) {
+                batch = new ArrayList<>(batchSize);
+                batches.put(geometryType, batch);
+            }
 
-        if (memoryDataStore != null) writeShapefile(memoryDataStore, outputFile);
+            batch.add(resource);
+            if (batch.size() >= batchSize) writeBatch(geometryType);
+        }
     }
 
 
-    private static MemoryDataStore createMemoryDataStore(List<Resource> resources, GeometryType geometryType,
-                                                         String epsg) throws Exception {
+    /**
+     * Completes all shapefiles. Must be called after the last resources have been written.
+     */
+    void finish() throws Exception {
 
-        SimpleFeatureType featureType = createFeatureType(geometryType, epsg);
+        for (GeometryType geometryType : new ArrayList<>(batches.keySet())) {
+            writeBatch(geometryType);
+        }
 
-        MemoryDataStore memoryDataStore = new MemoryDataStore();
-        memoryDataStore.createSchema(featureType);
+        for (GeometryType geometryType : layerWriters.keySet()) {
+            submit(geometryType, layerWriters.get(geometryType)::close);
+        }
 
-        GeometryBuilder geometryBuilder = new GeometryBuilder(JTSFactoryFinder.getGeometryFactory());
+        Exception error = awaitTasks();
+        if (error != null) throw error;
 
-        Transaction transaction = Transaction.AUTO_COMMIT;
+        layerWriters.clear();
+    }
 
-        boolean dataStoreEmpty = true;
 
-        for (Resource resource : resources) {
-            if (addFeature(resource, featureType, geometryType, geometryBuilder, memoryDataStore, transaction)) {
-                dataStoreEmpty = false;
-            }
-        }
+    /**
+     * Discards the shapefiles of all layers which have not been completed via {@link #finish()}.
+     */
+    @Override
+    public void close() {
 
-        transaction.close();
+        awaitTasks();
 
-        return dataStoreEmpty ? null : memoryDataStore;
-    }
+        for (LayerWriter layerWriter : layerWriters.values()) {
+            layerWriter.abort();
+        }
 
+        layerWriters.clear();
+        batches.clear();
 
-    private static SimpleFeatureType createFeatureType(GeometryType geometryType,
-                                                       String epsg) throws Exception {
+        if (executor != null) executor.shutdownNow();
+    }
 
-        String geometryName = null;
 
-        switch(geometryType) {
-            case MULTIPOINT:
-                geometryName = "MultiPoint";
-                break;
-            case MULTIPOLYLINE:
-                geometryName = "MultiLineString";
-                break;
-            case MULTIPOLYGON:
-                geometryName = "MultiPolygon";
-                break;
-        }
+    private void writeBatch(GeometryType geometryType) throws Exception {
 
-        String schema = "the_geom:" + geometryName;
-        if (epsg != null) schema += ":srid=" + epsg;
-        schema += "," + dataSchema;
+        List<Resource> batch = batches.remove(geometryType);
+        if (batch == null || batch.isEmpty()) return;
 
-        return DataUtilities.createType(geometryType.name().toLowerCase(), schema);
+        LayerWriter layerWriter = getLayerWriter(geometryType);
+        submit(geometryType, () -> layerWriter.write(batch, geometryBuilder));
     }
 
 
-    private static boolean addFeature(Resource resource, SimpleFeatureType featureType,
-                                      GeometryType geometryType, GeometryBuilder geometryBuilder,
-                                      MemoryDataStore memoryDataStore,
-                                      Transaction transaction) throws Exception {
-
-        SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
-
-        switch(geometryType) {
-            case MULTIPOINT:
-                featureBuilder.add(geometryBuilder.buildMultiPointGeometry(resource.getGeometry()));
-                break;
-            case MULTIPOLYLINE:
-                featureBuilder.add(geometryBuilder.buildMultiPolylineGeometry(resource.getGeometry()));
-                break;
-            case MULTIPOLYGON:
-                MultiPolygon multiPolygon = geometryBuilder.buildMultiPolygonGeometry(resource.getGeometry());
-                if (multiPolygon != null) {
-                    featureBuilder.add(multiPolygon);
-                    break;
-                } else {
-                    return false;
-                }
+    /**
+     * Runs the task directly or, in concurrent mode, after all previously submitted tasks of the same geometry
+     * type. Tasks following a failed task of the same geometry type are skipped.
+     */
+    private void submit(GeometryType geometryType, LayerTask task) throws Exception {
+
+        if (executor == null) {
+            task.run();
+            return;
         }
 
-        fillFeatureFields(resource, featureBuilder);
+        throwIfAnyTaskFailed();
+        pendingBatches.acquire();
 
-        SimpleFeature feature = featureBuilder.buildFeature(null);
-        memoryDataStore.addFeature(feature);
+        CompletableFuture<Void> previousTask = tasks.containsKey(geometryType)
+                ? tasks.get(geometryType)
+                : CompletableFuture.completedFuture(null);
+
+        tasks.put(geometryType, previousTask.thenRunAsync(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor).whenComplete((result, error) -> pendingBatches.release()));
+    }
 
-        try {
-            transaction.commit();
-        } catch (Exception e) {
-            transaction.rollback();
-            transaction.close();
-            throw new Exception("Could not write feature for resource " + resource.getId()
-                    + " and featureType " + featureType.getTypeName(), e);
-        }
 
-        return true;
+    private void throwIfAnyTaskFailed() throws Exception {
+
+        for (CompletableFuture<Void> task : tasks.values()) {
+            if (task.isCompletedExceptionally()) {
+                Exception error = awaitTasks();
+                if (error != null) throw error;
+            }
+        }
     }
 
 
-    private static void fillFeatureFields(Resource resource, SimpleFeatureBuilder featureBuilder) {
+    /**
+     * Waits for all submitted tasks. The files of geometry types whose tasks failed are deleted.
+     *
+     * @return the error of the first failed task or null if all tasks succeeded
+     */
+    private Exception awaitTasks() {
 
-        featureBuilder.add(resource.getId());
-        featureBuilder.add(resource.getIdentifier());
+        Exception firstError = null;
 
-        if (resource.getShortDescription() != null) {
-            featureBuilder.add(resource.getShortDescription());
-        } else {
-            featureBuilder.add("");
+        for (GeometryType geometryType : tasks.keySet()) {
+            try {
+                tasks.get(geometryType).join();
+            } catch (CompletionException e) {
+                LayerWriter layerWriter = layerWriters.remove(geometryType);
+                if (layerWriter != null) layerWriter.abort();
+
+                if (firstError == null) {
+                    firstError = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
         }
 
-        featureBuilder.add(resource.getType());
+        tasks.clear();
+
+        return firstError;
     }
 
 
-    private static void writeShapefile(MemoryDataStore memoryDataStore, File outputFile) throws Exception {
+    private LayerWriter getLayerWriter(GeometryType geometryType) throws Exception {
+
+        LayerWriter layerWriter = layerWriters.get(geometryType);
 
-        SimpleFeatureSource featureSource = memoryDataStore.getFeatureSource(memoryDataStore.getTypeNames()[0]);
-        SimpleFeatureType featureType = featureSource.getSchema();
+        if (layerWriter == null) {
+            layerWriter = layerWriterFactory.create(geometryType);
+            layerWriters.put(geometryType, layerWriter);
+        }
 
-        Map<String, Serializable> creationParams = new HashMap<>();
-        creationParams.put("url", DataUtilities.fileToURL(outputFile));
+        return layerWriter;
+    }
 
-        ShapefileDataStoreFactory factory = (ShapefileDataStoreFactory) FileDataStoreFinder.getDataStoreFactory("shp");
-        ShapefileDataStore dataStore = (ShapefileDataStore) factory.createNewDataStore(creationParams);
-        dataStore.setCharset(Charset.forName("UTF-8"));
-        dataStore.createSchema(featureType);
 
-        SimpleFeatureStore featureStore = (SimpleFeatureStore) dataStore.getFeatureSource(dataStore.getTypeNames()[0]);
+    private interface LayerTask {
 
-        Transaction transaction = new DefaultTransaction();
-        try {
-            SimpleFeatureCollection collection = featureSource.getFeatures();
-            featureStore.addFeatures(collection);
-            transaction.commit();
-        } catch (IOException e) {
-            try {
-                transaction.rollback();
-                throw new Exception("Failed to commit datastore to feature store", e);
-            } catch (IOException e2) {
-                throw new Exception("Failed to commit datastore to feature store; transaction rollback failed", e2);
-            }
-        } finally {
-            transaction.close();
-        }
+        void run() throws Exception;
     }
 }
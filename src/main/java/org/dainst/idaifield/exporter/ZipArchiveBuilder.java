@@ -1,52 +1,178 @@
 package org.dainst.idaifield.exporter;
 
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 
 /**
+ * Builds a ZIP archive with the compression level, buffer size and number of compression threads given by the
+ * export options.
+ *
+ * With a single compression thread, each entry is compressed directly into the archive file through a write
+ * buffer of the configured size. With more threads, the entries are compressed concurrently, each one on a single
+ * worker, into scratch buffers and are written to the archive file in the order they were added when the archive
+ * is finished.
+ *
  * @author Thomas Kleinke
  */
-class ZipArchiveBuilder {
+class ZipArchiveBuilder implements AutoCloseable {
+
+    private final File outputFile;
+    private final int method;
+    private final int bufferSize;
+
+    private final ZipArchiveOutputStream zipOutputStream;
+    private final ExecutorService executor;
+    private final ParallelScatterZipCreator scatterZipCreator;
+    private final List<EntrySource> pendingSources = new ArrayList<>();
+
+
+    interface EntrySource {
+
+        InputStream open() throws IOException;
+
+        /**
+         * Releases the data of the entry. Called after the entry has been written or, if the archive is not
+         * completed, when the builder is closed.
+         */
+        default void discard() throws IOException {}
+    }
+
+
+    ZipArchiveBuilder(File outputFile, ExportOptions options) throws IOException {
+
+        this.outputFile = outputFile;
+        this.bufferSize = options.getZipBufferSize();
 
-    private static final int BUFFER = 2048;
+        int compressionLevel = options.getCompressionLevel();
+        this.method = compressionLevel == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        if (compressionLevel == 0) compressionLevel = Deflater.DEFAULT_COMPRESSION;
 
+        if (options.getCompressionThreads() > 1) {
+            this.zipOutputStream = null;
+            this.executor = Executors.newFixedThreadPool(options.getCompressionThreads());
+            this.scatterZipCreator = new ParallelScatterZipCreator(executor, ScratchBackingStore::new,
+                    compressionLevel);
+        } else {
+            this.zipOutputStream = new ZipArchiveOutputStream(new BufferedSeekableChannel(outputFile, bufferSize));
+            this.zipOutputStream.setMethod(method);
+            this.zipOutputStream.setLevel(compressionLevel);
+            this.executor = null;
+            this.scatterZipCreator = null;
+        }
+    }
 
-    static void buildZipArchive(File inputFolder, String outputFolderPath) throws Exception {
 
-        String outputFilePath = outputFolderPath + File.separator + inputFolder.getName() + ".zip";
+    /**
+     * Adds an entry to the archive. Entries can be added from different threads.
+     */
+    synchronized void addEntry(String entryName, EntrySource source) throws IOException {
 
-        FileOutputStream fileOutputStream = new FileOutputStream(outputFilePath);
-        ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(fileOutputStream));
-        zipOutputStream.setMethod(ZipOutputStream.DEFLATED);
+        ZipArchiveEntry entry = new ZipArchiveEntry(entryName);
+        entry.setMethod(method);
 
-        byte data[] = new byte[BUFFER];
+        if (scatterZipCreator != null) {
+            pendingSources.add(source);
+            scatterZipCreator.addArchiveEntry(entry, () -> {
+                try {
+                    return source.open();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } else {
+            try {
+                zipOutputStream.putArchiveEntry(entry);
+                try (InputStream inputStream = source.open()) {
+                    IOUtils.copy(inputStream, zipOutputStream, bufferSize);
+                }
+                zipOutputStream.closeArchiveEntry();
+            } finally {
+                source.discard();
+            }
+        }
+    }
+
+
+    /**
+     * Completes the archive after the last entry has been added.
+     */
+    synchronized void finish() throws Exception {
+
+        if (scatterZipCreator != null) {
+            try (ZipArchiveOutputStream outputStream = new ZipArchiveOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(outputFile), bufferSize))) {
+                scatterZipCreator.writeTo(outputStream);
+            }
+        } else {
+            zipOutputStream.finish();
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
 
         try {
+            if (executor != null) {
+                executor.shutdownNow();
+                awaitTermination();
+            }
+            for (EntrySource source : pendingSources) {
+                source.discard();
+            }
+        } finally {
+            pendingSources.clear();
+            if (zipOutputStream != null) zipOutputStream.close();
+        }
+    }
+
+
+    /**
+     * Waits for the compression workers, so that no entry is read while its data is being discarded.
+     */
+    private void awaitTermination() throws IOException {
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the compression of the ZIP entries");
+        }
+    }
+
+
+    static void buildZipArchive(File inputFolder, String outputFolderPath, ExportOptions options) throws Exception {
+
+        File outputFile = new File(outputFolderPath + File.separator + inputFolder.getName() + ".zip");
+
+        try (ZipArchiveBuilder zipArchiveBuilder = new ZipArchiveBuilder(outputFile, options)) {
             String fileNames[] = inputFolder.list();
             for (String fileName : fileNames) {
-                FileInputStream fileInputStream = new FileInputStream(
-                        inputFolder.getAbsolutePath() + File.separator + fileName
-                );
-
-                try (BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream,
-                        BUFFER)) {
-                    ZipEntry entry = new ZipEntry(inputFolder.getName() + File.separator + fileName);
-                    zipOutputStream.putNextEntry(entry);
-
-                    int count;
-                    while((count = bufferedInputStream.read(data, 0, BUFFER)) != -1) {
-                        zipOutputStream.write(data, 0, count);
-                    }
-                }
+                File file = new File(inputFolder.getAbsolutePath() + File.separator + fileName);
+                zipArchiveBuilder.addEntry(inputFolder.getName() + "/" + fileName,
+                        () -> new BufferedInputStream(new FileInputStream(file), options.getZipBufferSize()));
             }
-        } finally {
-            zipOutputStream.close();
+            zipArchiveBuilder.finish();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,281 @@
+package org.dainst.idaifield.exporter;
+
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+import org.geotools.data.shapefile.shp.JTSUtilities;
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.List;
+
+
+/**
+ * Writes the features of a single geometry type as shapefile components directly into a ZIP archive, without
+ * creating any files on disk.
+ *
+ * The .shp, .shx and .dbf headers contain the record count, file length and bounding box, which are only known
+ * after the last feature has been written. The record data of the three components is therefore encoded into
+ * scratch buffers first, which keep a bounded amount of data in memory and move larger content to a temporary
+ * file. When the layer is closed, the headers are computed and each component is added to the archive as header
+ * followed by its buffered records.
+ */
+class ZipLayerWriter implements LayerWriter {
+
+    private static final Charset charset = StandardCharsets.UTF_8;
+
+    private static final ShapefileAttribute[] attributes = ShapefileAttribute.values();
+    private static final int fieldLength = 254;
+    private static final int recordLength = 1 + attributes.length * fieldLength;
+
+    private static final int shapefileHeaderLength = 100;
+    private static final int recordHeaderLength = 8;
+
+    private final ZipArchiveBuilder zipArchiveBuilder;
+    private final String entryPath;
+    private final String projection;
+
+    private final ScratchBuffer shpRecords = new ScratchBuffer();
+    private final ScratchBuffer shxRecords = new ScratchBuffer();
+    private final ScratchBuffer dbfRecords = new ScratchBuffer();
+
+    private final Envelope bounds = new Envelope();
+    private final byte[] dbfRecord = new byte[recordLength];
+    private final ByteBuffer shxRecord = ByteBuffer.allocate(recordHeaderLength).order(ByteOrder.BIG_ENDIAN);
+    private ByteBuffer shpRecord = ByteBuffer.allocate(4096);
+
+    private ShapeType shapeType;
+    private ShapeHandler shapeHandler;
+    private int recordCount;
+    private long shpLength = shapefileHeaderLength;
+
+
+    /**
+     * @param folderName the name of the folder containing the shapefile components inside the archive
+     * @param projection the content of the .prj file or null if no .prj file should be written
+     */
+    ZipLayerWriter(ZipArchiveBuilder zipArchiveBuilder, String folderName, GeometryType geometryType,
+                   String projection) {
+
+        this.zipArchiveBuilder = zipArchiveBuilder;
+        this.entryPath = folderName + "/" + geometryType.name().toLowerCase() + "s";
+        this.projection = projection;
+    }
+
+
+    @Override
+    public void write(List<Resource> resources, GeometryBuilder geometryBuilder) throws Exception {
+
+        for (Resource resource : resources) {
+            try {
+                Geometry geometry = geometryBuilder.buildGeometry(resource.getGeometry());
+                if (geometry == null) continue;
+
+                writeShape(geometry, geometryBuilder);
+                writeAttributes(resource);
+                recordCount++;
+            } catch (Exception e) {
+                throw new Exception("Could not write feature for resource " + resource.getId()
+                        + " and layer " + entryPath, e);
+            }
+        }
+    }
+
+
+    @Override
+    public void close() throws Exception {
+
+        if (recordCount == 0) return;
+
+        dbfRecords.write(new byte[] { 0x1A });
+
+        addEntry(".shp", createShapefileHeader(shpLength), shpRecords);
+        addEntry(".shx", createShapefileHeader(shapefileHeaderLength + shxRecords.size()), shxRecords);
+        addEntry(".dbf", createDbaseHeader(), dbfRecords);
+        if (projection != null) addEntry(".prj", projection.getBytes(charset), null);
+        addEntry(".cpg", charset.name().getBytes(charset), null);
+    }
+
+
+    @Override
+    public void abort() {
+
+        try {
+            shpRecords.clear();
+            shxRecords.clear();
+            dbfRecords.clear();
+        } catch (IOException e) {
+            System.err.println("Failed to discard scratch buffers of layer " + entryPath + ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * @return the projection in the format used for .prj files or null if no EPSG code is given
+     */
+    static String getProjection(String epsg) throws Exception {
+
+        if (epsg == null) return null;
+
+        return CRS.decode("EPSG:" + epsg).toWKT().replaceAll("\n", "").replaceAll("  ", "");
+    }
+
+
+    private void writeShape(Geometry geometry, GeometryBuilder geometryBuilder) throws Exception {
+
+        if (shapeType == null) {
+            int dimensions = JTSUtilities.guessCoorinateDims(geometry.getCoordinates());
+            shapeType = JTSUtilities.getShapeType(geometry, dimensions);
+            shapeHandler = shapeType.getShapeHandler(geometryBuilder.getGeometryFactory());
+        }
+
+        geometry = JTSUtilities.convertToCollection(geometry, shapeType);
+
+        int contentLength = shapeHandler.getLength(geometry);
+        if (shpRecord.capacity() < recordHeaderLength + contentLength) {
+            shpRecord = ByteBuffer.allocate(Math.max(recordHeaderLength + contentLength, shpRecord.capacity() * 2));
+        }
+
+        shpRecord.clear();
+        shpRecord.order(ByteOrder.BIG_ENDIAN);
+        shpRecord.putInt(recordCount + 1);
+        shpRecord.putInt(contentLength / 2);
+        shpRecord.order(ByteOrder.LITTLE_ENDIAN);
+        shpRecord.putInt(shapeType.id);
+        shapeHandler.write(shpRecord, geometry);
+        shpRecord.flip();
+        shpRecords.write(shpRecord);
+
+        shxRecord.clear();
+        shxRecord.putInt((int) (shpLength / 2));
+        shxRecord.putInt(contentLength / 2);
+        shxRecord.flip();
+        shxRecords.write(shxRecord);
+
+        shpLength += recordHeaderLength + contentLength;
+        bounds.expandToInclude(geometry.getEnvelopeInternal());
+    }
+
+
+    private void writeAttributes(Resource resource) throws IOException {
+
+        dbfRecord[0] = ' ';
+
+        int offset = 1;
+        for (ShapefileAttribute attribute : attributes) {
+            offset = writeField(attribute.getValue(resource), offset);
+        }
+
+        dbfRecords.write(dbfRecord);
+    }
+
+
+    /**
+     * Writes the value left-aligned and padded with spaces. Values exceeding the field length are truncated at a
+     * character boundary.
+     */
+    private int writeField(String value, int offset) {
+
+        byte[] bytes = value != null ? value.getBytes(charset) : new byte[0];
+
+        int length = Math.min(bytes.length, fieldLength);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) length--;
+
+        System.arraycopy(bytes, 0, dbfRecord, offset, length);
+        for (int i = length; i < fieldLength; i++) {
+            dbfRecord[offset + i] = ' ';
+        }
+
+        return offset + fieldLength;
+    }
+
+
+    /**
+     * The entry content is read when the entry is compressed, which may happen after the layer has been closed.
+     * Reading the content releases the scratch buffer.
+     */
+    private void addEntry(String extension, byte[] header, ScratchBuffer records) throws IOException {
+
+        zipArchiveBuilder.addEntry(entryPath + extension, new ZipArchiveBuilder.EntrySource() {
+
+            @Override
+            public InputStream open() throws IOException {
+
+                return records == null
+                        ? new ByteArrayInputStream(header)
+                        : new SequenceInputStream(new ByteArrayInputStream(header), records.getInputStream());
+            }
+
+            @Override
+            public void discard() throws IOException {
+
+                if (records != null) records.clear();
+            }
+        });
+    }
+
+
+    private byte[] createShapefileHeader(long fileLength) {
+
+        ByteBuffer header = ByteBuffer.allocate(shapefileHeaderLength);
+
+        header.order(ByteOrder.BIG_ENDIAN);
+        header.putInt(9994);
+        for (int i = 0; i < 5; i++) header.putInt(0);
+        header.putInt((int) (fileLength / 2));
+
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(1000);
+        header.putInt(shapeType.id);
+        header.putDouble(bounds.getMinX());
+        header.putDouble(bounds.getMinY());
+        header.putDouble(bounds.getMaxX());
+        header.putDouble(bounds.getMaxY());
+        for (int i = 0; i < 4; i++) header.putDouble(0.0);
+
+        return header.array();
+    }
+
+
+    private byte[] createDbaseHeader() {
+
+        int headerLength = 32 + 32 * attributes.length + 1;
+        ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        Calendar date = Calendar.getInstance();
+        header.put((byte) 3);
+        header.put((byte) (date.get(Calendar.YEAR) - 1900));
+        header.put((byte) (date.get(Calendar.MONTH) + 1));
+        header.put((byte) date.get(Calendar.DAY_OF_MONTH));
+        header.putInt(recordCount);
+        header.putShort((short) headerLength);
+        header.putShort((short) recordLength);
+        header.position(32);
+
+        for (ShapefileAttribute attribute : attributes) {
+            int fieldStart = header.position();
+            header.put(attribute.getAttributeName().getBytes(StandardCharsets.US_ASCII));
+            header.position(fieldStart + 11);
+            header.put((byte) 'C');
+            header.position(fieldStart + 16);
+            header.put((byte) fieldLength);
+            header.put((byte) 0);
+            header.position(fieldStart + 32);
+        }
+
+        header.put((byte) 0x0D);
+
+        return header.array();
+    }
+}
@@ -0,0 +1,250 @@
+package org.dainst.idaifield.importer;
+
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * Compares a geometry read from a shapefile with a GeoJSON geometry stored in a document. Both geometries are
+ * brought into a canonical form before comparing them:
+ *
+ * - The coordinates are nested as parts, rings and vertices like in the geometry model, so that for example a
+ *   stored Polygon equals a shapefile MultiPolygon consisting of a single polygon and a Point equals a MultiPoint
+ *   with one point.
+ * - The points of a multipoint are sorted.
+ * - Polygon rings are unclosed, oriented counterclockwise (shell) or clockwise (holes) and rotated to start at
+ *   their smallest vertex, so that rings differing only in closing vertex, orientation or starting vertex are equal.
+ */
+class GeometryComparator {
+
+    private static final Comparator<double[]> vertexComparator = (vertex1, vertex2) -> {
+        for (int i = 0; i < Math.min(vertex1.length, vertex2.length); i++) {
+            int result = Double.compare(vertex1[i], vertex2[i]);
+            if (result != 0) return result;
+        }
+        return Integer.compare(vertex1.length, vertex2.length);
+    };
+
+
+    /**
+     * @param tolerance the maximum difference between two ordinates considered equal, 0 for exact comparison
+     * @return true if both geometries have the same type, structure and vertices. Z values are only equal if
+     * both vertices have one.
+     */
+    static boolean isEqual(Geometry geometry, JSONObject storedGeometry, double tolerance) {
+
+        if (storedGeometry == null) return false;
+
+        String type = storedGeometry.optString("type");
+        JSONArray coordinates = storedGeometry.optJSONArray("coordinates");
+        if (coordinates == null || getGeometryType(type) != geometry.getType()) return false;
+
+        double[][][][] storedParts = getParts(type, coordinates);
+        if (storedParts == null) return false;
+
+        return isEqual(canonicalize(geometry.getType(), geometry.getCoordinates(), tolerance),
+                canonicalize(geometry.getType(), storedParts, tolerance), tolerance);
+    }
+
+
+    private static boolean isEqual(double[][][][] parts1, double[][][][] parts2, double tolerance) {
+
+        if (parts1.length != parts2.length) return false;
+
+        for (int part = 0; part < parts1.length; part++) {
+            if (parts1[part].length != parts2[part].length) return false;
+
+            for (int ring = 0; ring < parts1[part].length; ring++) {
+                if (!isEqual(parts1[part][ring], parts2[part][ring], tolerance)) return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Rings in canonical form start at their smallest vertex. As the smallest vertices of two rings may differ
+     * within the tolerance, each vertex of the second ring equal to the first vertex of the first ring is tried as
+     * starting vertex.
+     */
+    private static boolean isEqual(double[][] ring1, double[][] ring2, double tolerance) {
+
+        if (ring1.length != ring2.length) return false;
+        if (ring1.length == 0) return true;
+
+        for (int start = 0; start < ring2.length; start++) {
+            if (isEqual(ring1, ring2, start, tolerance)) return true;
+        }
+
+        return false;
+    }
+
+
+    private static boolean isEqual(double[][] ring1, double[][] ring2, int start, double tolerance) {
+
+        for (int i = 0; i < ring1.length; i++) {
+            if (!isEqual(ring1[i], ring2[(start + i) % ring2.length], tolerance)) return false;
+        }
+
+        return true;
+    }
+
+
+    private static boolean isEqual(double[] vertex1, double[] vertex2, double tolerance) {
+
+        if (vertex1.length != vertex2.length) return false;
+
+        for (int i = 0; i < vertex1.length; i++) {
+            if (!(Math.abs(vertex1[i] - vertex2[i]) <= tolerance)) return false;
+        }
+
+        return true;
+    }
+
+
+    private static double[][][][] canonicalize(GeometryType type, double[][][][] parts, double tolerance) {
+
+        for (double[][][] part : parts) {
+            for (int ring = 0; ring < part.length; ring++) {
+                if (type == GeometryType.MULTIPOINT) {
+                    Arrays.sort(part[ring], vertexComparator);
+                } else if (type == GeometryType.MULTIPOLYGON) {
+                    part[ring] = canonicalizeRing(part[ring], ring == 0, tolerance);
+                }
+            }
+        }
+
+        return parts;
+    }
+
+
+    private static double[][] canonicalizeRing(double[][] ring, boolean shell, double tolerance) {
+
+        if (ring.length > 1 && isEqual(ring[0], ring[ring.length - 1], tolerance)) {
+            ring = Arrays.copyOf(ring, ring.length - 1);
+        }
+
+        double area = getSignedArea(ring);
+        if (shell ? area < 0 : area > 0) {
+            ring = ring.clone();
+            for (int i = 0; i < ring.length / 2; i++) {
+                double[] vertex = ring[i];
+                ring[i] = ring[ring.length - 1 - i];
+                ring[ring.length - 1 - i] = vertex;
+            }
+        }
+
+        int start = 0;
+        for (int i = 1; i < ring.length; i++) {
+            if (vertexComparator.compare(ring[i], ring[start]) < 0) start = i;
+        }
+
+        double[][] result = new double[ring.length][];
+        for (int i = 0; i < ring.length; i++) {
+            result[i] = ring[(start + i) % ring.length];
+        }
+
+        return result;
+    }
+
+
+    /**
+     * @return twice the area of the unclosed ring, positive if the ring is oriented counterclockwise
+     */
+    private static double getSignedArea(double[][] ring) {
+
+        double area = 0;
+
+        for (int i = 0; i < ring.length; i++) {
+            double[] vertex = ring[i];
+            double[] nextVertex = ring[(i + 1) % ring.length];
+            area += vertex[0] * nextVertex[1] - nextVertex[0] * vertex[1];
+        }
+
+        return area;
+    }
+
+
+    /**
+     * @return the coordinates as an array of parts, each one an array of rings, each one an array of vertices, or
+     * null if the coordinates are malformed
+     */
+    private static double[][][][] getParts(String type, JSONArray coordinates) {
+
+        switch (type) {
+            case "Point":
+                return getParts(new JSONArray().put(new JSONArray().put(new JSONArray().put(coordinates))));
+            case "MultiPoint":
+            case "LineString":
+                return getParts(new JSONArray().put(new JSONArray().put(coordinates)));
+            case "MultiLineString":
+            case "Polygon":
+                return getParts(new JSONArray().put(coordinates));
+            default:
+                return getParts(coordinates);
+        }
+    }
+
+
+    private static double[][][][] getParts(JSONArray partsArray) {
+
+        double[][][][] parts = new double[partsArray.length()][][][];
+
+        for (int part = 0; part < parts.length; part++) {
+            JSONArray rings = partsArray.optJSONArray(part);
+            if (rings == null) return null;
+            parts[part] = new double[rings.length()][][];
+
+            for (int ring = 0; ring < rings.length(); ring++) {
+                JSONArray vertices = rings.optJSONArray(ring);
+                if (vertices == null) return null;
+                parts[part][ring] = new double[vertices.length()][];
+
+                for (int vertex = 0; vertex < vertices.length(); vertex++) {
+                    parts[part][ring][vertex] = getVertex(vertices.optJSONArray(vertex));
+                    if (parts[part][ring][vertex] == null) return null;
+                }
+            }
+        }
+
+        return parts;
+    }
+
+
+    private static double[] getVertex(JSONArray vertex) {
+
+        if (vertex == null || vertex.length() < 2) return null;
+
+        double[] result = new double[Math.min(vertex.length(), 3)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = vertex.optDouble(i);
+            if (Double.isNaN(result[i])) return null;
+        }
+
+        return result;
+    }
+
+
+    private static GeometryType getGeometryType(String type) {
+
+        switch (type) {
+            case "Point":
+            case "MultiPoint":
+                return GeometryType.MULTIPOINT;
+            case "LineString":
+            case "MultiLineString":
+                return GeometryType.MULTIPOLYLINE;
+            case "Polygon":
+            case "MultiPolygon":
+                return GeometryType.MULTIPOLYGON;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.dainst.idaifield.importer;
+
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+
+/**
+ * Converts JTS geometries as read from a shapefile into the geometry model.
+ */
+class GeometryConverter {
+
+    /**
+     * @return the converted geometry or null if the type of the given geometry is not supported
+     */
+    static Geometry convert(org.locationtech.jts.geom.Geometry geometry) {
+
+        if (geometry instanceof MultiPoint) {
+            return getMultiPointGeometry((MultiPoint) geometry);
+        } else if (geometry instanceof MultiLineString) {
+            return getMultiPolylineGeometry((MultiLineString) geometry);
+        } else if (geometry instanceof MultiPolygon) {
+            return getMultiPolygonGeometry((MultiPolygon) geometry);
+        } else {
+            return null;
+        }
+    }
+
+
+    static Geometry getMultiPointGeometry(MultiPoint multiPoint) {
+
+        CoordinateSequence[] sequences = new CoordinateSequence[multiPoint.getNumGeometries()];
+
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = ((Point) multiPoint.getGeometryN(i)).getCoordinateSequence();
+        }
+
+        return createGeometry(GeometryType.MULTIPOINT, sequences, new int[] { 0, 1 },
+                new int[] { 0, sequences.length });
+    }
+
+
+    static Geometry getMultiPolylineGeometry(MultiLineString multiPolyline) {
+
+        CoordinateSequence[] sequences = new CoordinateSequence[multiPolyline.getNumGeometries()];
+
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = ((LineString) multiPolyline.getGeometryN(i)).getCoordinateSequence();
+        }
+
+        return createGeometry(GeometryType.MULTIPOLYLINE, sequences, new int[] { 0, sequences.length },
+                createIdentityOffsets(sequences.length));
+    }
+
+
+    static Geometry getMultiPolygonGeometry(MultiPolygon multiPolygon) {
+
+        int[] partOffsets = new int[multiPolygon.getNumGeometries() + 1];
+
+        for (int i = 0; i < multiPolygon.getNumGeometries(); i++) {
+            Polygon polygon = (Polygon) multiPolygon.getGeometryN(i);
+            partOffsets[i + 1] = partOffsets[i] + polygon.getNumInteriorRing() + 1;
+        }
+
+        CoordinateSequence[] sequences = new CoordinateSequence[partOffsets[partOffsets.length - 1]];
+
+        for (int i = 0; i < multiPolygon.getNumGeometries(); i++) {
+            Polygon polygon = (Polygon) multiPolygon.getGeometryN(i);
+            sequences[partOffsets[i]] = polygon.getExteriorRing().getCoordinateSequence();
+
+            for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                sequences[partOffsets[i] + j + 1] = polygon.getInteriorRingN(j).getCoordinateSequence();
+            }
+        }
+
+        return createGeometry(GeometryType.MULTIPOLYGON, sequences, partOffsets,
+                createIdentityOffsets(sequences.length));
+    }
+
+
+    /**
+     * Copies the ordinates of the coordinate sequences into a single packed array, reading each sequence in one
+     * pass.
+     *
+     * @param sequenceOffsets the sequences of ring r are the sequences from sequenceOffsets[r] (inclusive) to
+     *                        sequenceOffsets[r + 1] (exclusive)
+     */
+    private static Geometry createGeometry(GeometryType type, CoordinateSequence[] sequences, int[] partOffsets,
+                                           int[] sequenceOffsets) {
+
+        int vertexCount = 0;
+        boolean hasZ = false;
+
+        for (CoordinateSequence sequence : sequences) {
+            vertexCount += sequence.size();
+            if (!hasZ && sequence.hasZ()) hasZ = containsZ(sequence);
+        }
+
+        int dimension = hasZ ? 3 : 2;
+        double[] ordinates = new double[vertexCount * dimension];
+        int[] ringOffsets = new int[sequenceOffsets.length];
+
+        int index = 0;
+
+        for (int ring = 0; ring < sequenceOffsets.length - 1; ring++) {
+            for (int i = sequenceOffsets[ring]; i < sequenceOffsets[ring + 1]; i++) {
+                CoordinateSequence sequence = sequences[i];
+
+                for (int vertex = 0; vertex < sequence.size(); vertex++) {
+                    ordinates[index] = sequence.getX(vertex);
+                    ordinates[index + 1] = sequence.getY(vertex);
+                    if (hasZ) ordinates[index + 2] = sequence.getZ(vertex);
+                    index += dimension;
+                }
+            }
+            ringOffsets[ring + 1] = index / dimension;
+        }
+
+        Geometry geometry = new Geometry();
+        geometry.setType(type);
+        geometry.setOrdinates(dimension, ordinates, partOffsets, ringOffsets);
+
+        return geometry;
+    }
+
+
+    private static boolean containsZ(CoordinateSequence sequence) {
+
+        for (int i = 0; i < sequence.size(); i++) {
+            if (!Double.isNaN(sequence.getZ(i))) return true;
+        }
+
+        return false;
+    }
+
+
+    private static int[] createIdentityOffsets(int count) {
+
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i <= count; i++) offsets[i] = i;
+
+        return offsets;
+    }
+}
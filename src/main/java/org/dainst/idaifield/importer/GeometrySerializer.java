@@ -0,0 +1,175 @@
+package org.dainst.idaifield.importer;
+
+import org.dainst.idaifield.datastore.JSONWritable;
+import org.dainst.idaifield.model.Geometry;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+
+/**
+ * Serializes a geometry to GeoJSON directly from the ordinate and offset arrays of the geometry model, without
+ * creating JSON arrays of boxed numbers. The GeoJSON type and thereby the depth of the coordinates arrays are
+ * determined once when the serializer is created.
+ *
+ * As a {@link JSONWritable}, the serializer can be put into a document, and the datastore writes its GeoJSON
+ * directly to the body of the bulk update request.
+ */
+class GeometrySerializer implements JSONWritable {
+
+    private final Geometry geometry;
+    private final String type;
+    private final int depth;
+
+
+    /**
+     * @param resourceId the ID of the resource the geometry belongs to, used in error messages
+     */
+    GeometrySerializer(Geometry geometry, String resourceId) throws Exception {
+
+        validate(geometry, resourceId);
+
+        this.geometry = geometry;
+        this.type = geometry.getGeojsonType();
+        this.depth = getDepth(type);
+    }
+
+
+    @Override
+    public void write(Writer writer) throws IOException {
+
+        writer.write("{\"type\":\"");
+        writer.write(type);
+        writer.write("\",\"coordinates\":");
+
+        switch (depth) {
+            case 0:
+                writeVertex(writer, 0);
+                break;
+            case 1:
+                writeRing(writer, 0);
+                break;
+            case 2:
+                writePart(writer, 0);
+                break;
+            default:
+                writeParts(writer);
+        }
+
+        writer.write('}');
+    }
+
+
+    @Override
+    public String toJSONString() {
+
+        StringWriter writer = new StringWriter(48 + geometry.getOrdinates().length * 20);
+
+        try {
+            write(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return writer.toString();
+    }
+
+
+    private void writeParts(Writer writer) throws IOException {
+
+        writer.write('[');
+        for (int part = 0; part < geometry.getPartCount(); part++) {
+            if (part > 0) writer.write(',');
+            writePart(writer, part);
+        }
+        writer.write(']');
+    }
+
+
+    private void writePart(Writer writer, int part) throws IOException {
+
+        int[] partOffsets = geometry.getPartOffsets();
+
+        writer.write('[');
+        for (int ring = partOffsets[part]; ring < partOffsets[part + 1]; ring++) {
+            if (ring > partOffsets[part]) writer.write(',');
+            writeRing(writer, ring);
+        }
+        writer.write(']');
+    }
+
+
+    private void writeRing(Writer writer, int ring) throws IOException {
+
+        int[] ringOffsets = geometry.getRingOffsets();
+
+        writer.write('[');
+        for (int vertex = ringOffsets[ring]; vertex < ringOffsets[ring + 1]; vertex++) {
+            if (vertex > ringOffsets[ring]) writer.write(',');
+            writeVertex(writer, vertex);
+        }
+        writer.write(']');
+    }
+
+
+    private void writeVertex(Writer writer, int vertex) throws IOException {
+
+        writer.write('[');
+        writer.write(Double.toString(geometry.getX(vertex)));
+        writer.write(',');
+        writer.write(Double.toString(geometry.getY(vertex)));
+
+        double z = geometry.getZ(vertex);
+        if (!Double.isNaN(z)) {
+            writer.write(',');
+            writer.write(Double.toString(z));
+        }
+
+        writer.write(']');
+    }
+
+
+    /**
+     * Makes sure that the geometry has at least one vertex and that all ordinates can be written as JSON numbers.
+     * A missing z value is stored as NaN and omitted when writing the vertex. An empty geometry (as read from a
+     * null shape record) has no GeoJSON representation, because the single geometry types need a vertex.
+     */
+    private static void validate(Geometry geometry, String resourceId) throws Exception {
+
+        if (geometry.getPartCount() == 0 || geometry.getRingCount() == 0 || geometry.getVertexCount() == 0) {
+            throw new Exception("Invalid coordinates: Empty geometry for resource " + resourceId);
+        }
+
+        for (int vertex = 0; vertex < geometry.getVertexCount(); vertex++) {
+            double z = geometry.getZ(vertex);
+
+            if (!Double.isFinite(geometry.getX(vertex)) || !Double.isFinite(geometry.getY(vertex))
+                    || Double.isInfinite(z)) {
+                throw new Exception("Invalid coordinates: Vertex with non-finite ordinate for resource "
+                        + resourceId);
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of array levels above the vertices in the coordinates of the given GeoJSON geometry type
+     */
+    private static int getDepth(String type) {
+
+        switch (type) {
+            case "Point":
+                return 0;
+            case "MultiPoint":
+            case "LineString":
+                return 1;
+            case "MultiLineString":
+            case "Polygon":
+                return 2;
+            default:
+                return 3;
+        }
+    }
+}
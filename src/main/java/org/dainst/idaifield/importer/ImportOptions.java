@@ -0,0 +1,88 @@
+package org.dainst.idaifield.importer;
+
+
+public class ImportOptions {
+
+    private int chunkSize = 100;
+    private int batchSize = 100;
+    private int maxRequests = 1;
+    private boolean skipUnchanged = false;
+    private double tolerance = 0;
+
+
+    /**
+     * @return the number of documents fetched from the datastore with a single request
+     */
+    public int getChunkSize() {
+
+        return chunkSize;
+    }
+
+
+    public void setChunkSize(int chunkSize) {
+
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * @return the number of documents written to the datastore with a single request
+     */
+    public int getBatchSize() {
+
+        return batchSize;
+    }
+
+
+    public void setBatchSize(int batchSize) {
+
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * @return the maximum number of requests to the datastore in flight at the same time. The importer uses at most
+     * as many concurrent requests as the datastore has connections.
+     */
+    public int getMaxRequests() {
+
+        return maxRequests;
+    }
+
+
+    public void setMaxRequests(int maxRequests) {
+
+        this.maxRequests = maxRequests;
+    }
+
+
+    /**
+     * @return true if resources whose stored geometry equals the geometry in the shapefile should not be updated
+     */
+    public boolean isSkipUnchanged() {
+
+        return skipUnchanged;
+    }
+
+
+    public void setSkipUnchanged(boolean skipUnchanged) {
+
+        this.skipUnchanged = skipUnchanged;
+    }
+
+
+    /**
+     * @return the maximum difference between two coordinate values which are considered equal when comparing
+     * geometries, 0 for exact comparison
+     */
+    public double getTolerance() {
+
+        return tolerance;
+    }
+
+
+    public void setTolerance(double tolerance) {
+
+        this.tolerance = tolerance;
+    }
+}
@@ -0,0 +1,57 @@
+package org.dainst.idaifield.importer;
+
+import org.dainst.idaifield.datastore.BulkUpdateReport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Result of importing a set of resources, listing the IDs of the resources which could not be found in the
+ * datastore and the result of writing the updated documents.
+ */
+class ImportReport {
+
+    private final List<String> missingResourceIds = new ArrayList<>();
+    private final BulkUpdateReport updateReport = new BulkUpdateReport();
+
+
+    List<String> getMissingResourceIds() {
+
+        return missingResourceIds;
+    }
+
+
+    BulkUpdateReport getUpdateReport() {
+
+        return updateReport;
+    }
+
+
+    void add(ImportReport report) {
+
+        missingResourceIds.addAll(report.missingResourceIds);
+        updateReport.add(report.updateReport);
+    }
+
+
+    /**
+     * @return a message listing all resources which could not be imported or null if all resources were imported
+     */
+    String getErrorMessage() {
+
+        List<String> errors = new ArrayList<>();
+
+        if (!missingResourceIds.isEmpty()) {
+            errors.add("RESOURCES_NOT_FOUND " + String.join(", ", missingResourceIds));
+        }
+        if (!updateReport.getConflictIds().isEmpty()) {
+            errors.add("UPDATE_CONFLICT " + String.join(", ", updateReport.getConflictIds()));
+        }
+        if (!updateReport.getFailures().isEmpty()) {
+            errors.add("UPDATE_FAILED " + updateReport.getFailures());
+        }
+
+        return errors.isEmpty() ? null : String.join("; ", errors);
+    }
+}
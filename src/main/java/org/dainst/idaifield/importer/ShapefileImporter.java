@@ -1,15 +1,22 @@
 package org.dainst.idaifield.importer;
 
 import org.dainst.idaifield.datastore.Datastore;
-import org.dainst.idaifield.model.Geometry;
 import org.dainst.idaifield.model.Resource;
 import org.json.JSONObject;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.TimeZone;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 
 /**
@@ -17,82 +24,160 @@ import java.util.TimeZone;
  */
 public class ShapefileImporter {
 
-    private static DateFormat dateFormat = createDateFormat();
-
+    private static final int MAX_PENDING_CHUNKS_PER_REQUEST = 2;
+
+    private static final DateTimeFormatter dateFormatter
+            = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+
+    /**
+     * Updates the geometries of the existing documents chunk by chunk, reading each chunk from the shapefile only
+     * when it is about to be imported. If more than one concurrent request is allowed, several chunks are imported
+     * at the same time, each one fetched, updated and written by its own worker, so that at most the configured
+     * number of requests is in flight. Errors concerning single resources are collected and reported after all
+     * chunks have been imported.
+     */
+    public static void run(Datastore datastore, String projectName, String userName, String shapefilePath,
+                           ImportOptions options) throws Exception {
+
+        ImportReport report = new ImportReport();
+        int maxRequests = Math.min(options.getMaxRequests(), datastore.getMaxConnections());
+
+        try (ShapefileReader reader = new ShapefileReader(shapefilePath)) {
+            if (maxRequests > 1) {
+                importConcurrently(datastore, projectName, userName, reader, maxRequests, options, report);
+            } else {
+                List<Resource> chunk;
+                while (!(chunk = reader.read(options.getChunkSize())).isEmpty()) {
+                    report.add(importChunk(datastore, projectName, userName, chunk, options));
+                }
+            }
+        }
 
-    public static void run(String projectName, String userName, String shapefilePath) throws Exception {
+        String errors = report.getErrorMessage();
+        if (errors != null) throw new Exception(errors);
+    }
 
-        List<Resource> resources = ShapefileReader.read(shapefilePath);
 
-        for (Resource resource : resources) {
-            updateExistingDocument(projectName, userName, resource);
+    /**
+     * The reports of the chunks are added in the order of the chunks, so the error message does not depend on
+     * the order in which the workers complete.
+     *
+     * @param maxRequests the number of workers, at most the number of connections of the datastore
+     */
+    private static void importConcurrently(Datastore datastore, String projectName, String userName,
+                                           ShapefileReader reader, int maxRequests, ImportOptions options,
+                                           ImportReport report) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxRequests);
+        Semaphore pendingChunks = new Semaphore(maxRequests * MAX_PENDING_CHUNKS_PER_REQUEST);
+        Deque<Future<ImportReport>> tasks = new ArrayDeque<>();
+
+        try {
+            List<Resource> chunk;
+            while (!(chunk = reader.read(options.getChunkSize())).isEmpty()) {
+                List<Resource> resources = chunk;
+
+                pendingChunks.acquire();
+                tasks.add(executor.submit(() -> {
+                    try {
+                        return importChunk(datastore, projectName, userName, resources, options);
+                    } finally {
+                        pendingChunks.release();
+                    }
+                }));
+
+                while (!tasks.isEmpty() && tasks.peek().isDone()) {
+                    report.add(getResult(tasks.poll()));
+                }
+            }
+
+            while (!tasks.isEmpty()) report.add(getResult(tasks.poll()));
+        } finally {
+            executor.shutdownNow();
         }
     }
 
 
-    private static void updateExistingDocument(String projectName, String userName,
-                                               Resource shapefileResource) throws Exception {
+    private static ImportReport importChunk(Datastore datastore, String projectName, String userName,
+                                            List<Resource> chunk, ImportOptions options) throws Exception {
 
-        if (!hasValue(shapefileResource.getId())) throw new Exception("ID_MISSING");
+        ImportReport report = new ImportReport();
 
-        JSONObject document = Datastore.getJSONDocument(projectName, shapefileResource.getId());
-        updateGeometry(shapefileResource, document.getJSONObject("resource"));
-        addActionToModified(document, userName);
+        Map<String, JSONObject> documents = datastore.getJSONDocuments(projectName, getIds(chunk),
+                options.getChunkSize());
 
-        Datastore.update(projectName, document);
+        List<JSONObject> updatedDocuments = new ArrayList<>();
+
+        for (Resource resource : chunk) {
+            JSONObject document = documents.get(resource.getId());
+            if (document == null) {
+                report.getMissingResourceIds().add(resource.getId());
+            } else if (!isUnchanged(resource, document, options)) {
+                updateExistingDocument(userName, resource, document);
+                updatedDocuments.add(document);
+            }
+        }
+
+        report.getUpdateReport().add(datastore.update(projectName, updatedDocuments, options.getBatchSize()));
+
+        return report;
     }
 
 
-    private static void updateGeometry(Resource shapefileResource, JSONObject existingResource) {
+    private static boolean isUnchanged(Resource shapefileResource, JSONObject document, ImportOptions options) {
 
-        if (existingResource.has("geometry")) existingResource.remove("geometry");
-        existingResource.put("geometry", getGeometryJSON(shapefileResource.getGeometry()));
+        return options.isSkipUnchanged() && GeometryComparator.isEqual(shapefileResource.getGeometry(),
+                document.getJSONObject("resource").optJSONObject("geometry"), options.getTolerance());
     }
 
 
-    private static JSONObject getGeometryJSON(Geometry geometry) {
+    private static ImportReport getResult(Future<ImportReport> task) throws Exception {
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
 
-        JSONObject geometryJSON = new JSONObject();
+    private static List<String> getIds(List<Resource> resources) throws Exception {
 
-        String type = geometry.getGeojsonType();
-        geometryJSON.put("type", type);
+        List<String> ids = new ArrayList<>();
 
-        switch (type) {
-            case "Point":
-                geometryJSON.put("coordinates", geometry.getCoordinates()[0][0][0]);
-                break;
-            case "MultiPoint":
-            case "LineString":
-                geometryJSON.put("coordinates", geometry.getCoordinates()[0][0]);
-                break;
-            case "MultiLineString":
-            case "Polygon":
-                geometryJSON.put("coordinates", geometry.getCoordinates()[0]);
-                break;
-            case "MultiPolygon":
-                geometryJSON.put("coordinates", geometry.getCoordinates());
+        for (Resource resource : resources) {
+            if (!hasValue(resource.getId())) throw new Exception("ID_MISSING");
+            ids.add(resource.getId());
         }
 
-        return geometryJSON;
+        return ids;
     }
 
 
-    private static void addActionToModified(JSONObject document, String userName) {
+    private static void updateExistingDocument(String userName, Resource shapefileResource,
+                                               JSONObject document) throws Exception {
 
-        JSONObject action = new JSONObject();
-        action.put("user", userName);
-        action.put("date", dateFormat.format(new Date()));
+        updateGeometry(shapefileResource, document.getJSONObject("resource"));
+        addActionToModified(document, userName);
+    }
 
-        document.getJSONArray("modified").put(action);
+
+    private static void updateGeometry(Resource shapefileResource, JSONObject existingResource) throws Exception {
+
+        if (existingResource.has("geometry")) existingResource.remove("geometry");
+        existingResource.put("geometry", new GeometrySerializer(shapefileResource.getGeometry(),
+                shapefileResource.getId()));
     }
 
 
-    private static DateFormat createDateFormat() {
+    private static void addActionToModified(JSONObject document, String userName) {
 
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        JSONObject action = new JSONObject();
+        action.put("user", userName);
+        action.put("date", dateFormatter.format(Instant.now()));
 
-        return dateFormat;
+        document.getJSONArray("modified").put(action);
     }
 
 
@@ -2,58 +2,96 @@ package org.dainst.idaifield.importer;
 
 import org.dainst.idaifield.model.Geometry;
 import org.dainst.idaifield.model.Resource;
-import org.geotools.data.DataStore;
-import org.geotools.data.DataStoreFinder;
-import org.geotools.data.FeatureSource;
-import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
-import org.opengis.feature.Property;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 /**
+ * Reads the features of a shapefile one after another, using the memory-mapped and buffer-cached I/O of the
+ * shapefile data store. Only the id attribute and the geometry are read from the files, so the memory required
+ * does not depend on the size of the shapefile.
+ *
  * @author Thomas Kleinke
  */
-class ShapefileReader {
+class ShapefileReader implements Closeable {
 
-    static List<Resource> read(String shapefilePath) throws Exception {
+    private final ShapefileDataStore dataStore;
+    private final FeatureReader<SimpleFeatureType, SimpleFeature> featureReader;
+    private final int idIndex;
 
-        List<Resource> resources = new ArrayList<>();
 
-        try (FeatureIterator<SimpleFeature> features = getFeatureCollection(shapefilePath).features()) {
-            while (features.hasNext()) resources.add(createResource(features.next()));
+    ShapefileReader(String shapefilePath) throws Exception {
+
+        dataStore = new ShapefileDataStore(new File(shapefilePath).toURI().toURL());
+
+        try {
+            dataStore.setMemoryMapped(true);
+            dataStore.setBufferCachingEnabled(true);
+            dataStore.setIndexed(false);
+
+            SimpleFeatureType featureType = dataStore.getSchema();
+            Query query = new Query(featureType.getTypeName(), Filter.INCLUDE, getPropertyNames(featureType));
+            featureReader = dataStore.getFeatureReader(query, Transaction.AUTO_COMMIT);
+            idIndex = featureReader.getFeatureType().indexOf("id");
+        } catch (Exception e) {
+            dataStore.dispose();
+            throw e;
+        }
+    }
+
+
+    /**
+     * @return the resources of the next features, at most the given number. An empty list if all features have
+     * been read.
+     */
+    List<Resource> read(int count) throws Exception {
+
+        List<Resource> resources = new ArrayList<>(count);
+
+        while (resources.size() < count && featureReader.hasNext()) {
+            resources.add(createResource(featureReader.next()));
         }
 
         return resources;
     }
 
 
-    private static FeatureCollection<SimpleFeatureType, SimpleFeature> getFeatureCollection(
-            String shapefilePath) throws Exception {
+    @Override
+    public void close() throws IOException {
+
+        try {
+            featureReader.close();
+        } finally {
+            dataStore.dispose();
+        }
+    }
 
-        File file = new File(shapefilePath);
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("url", file.toURI().toURL());
 
-        DataStore dataStore = DataStoreFinder.getDataStore(parameters);
-        String typeName = dataStore.getTypeNames()[0];
+    /**
+     * @return the names of the geometry attribute and, if the shapefile contains it, the id attribute
+     */
+    private static String[] getPropertyNames(SimpleFeatureType featureType) {
 
-        FeatureSource<SimpleFeatureType, SimpleFeature> source = dataStore.getFeatureSource(typeName);
-        Filter filter = Filter.INCLUDE;
+        String geometryName = featureType.getGeometryDescriptor().getLocalName();
 
-        return source.getFeatures(filter);
+        return featureType.indexOf("id") != -1
+                ? new String[] { geometryName, "id" }
+                : new String[] { geometryName };
     }
 
 
-    private static Resource createResource(SimpleFeature feature) throws Exception {
+    private Resource createResource(SimpleFeature feature) throws Exception {
 
         Resource resource = new Resource();
         setResourceFields(resource, feature);
@@ -63,29 +101,43 @@ class ShapefileReader {
     }
 
 
-    private static void setResourceFields(Resource resource, SimpleFeature feature) {
-
-        for (Property attribute : feature.getProperties()) {
-            switch(attribute.getName().toString()) {
-                case "id":
-                    resource.setId(attribute.getValue().toString());
-                    break;
-                case "identifier":
-                    resource.setIdentifier(attribute.getValue().toString());
-                    break;
-                case "shortdesc":
-                    resource.setShortDescription(attribute.getValue().toString());
-                    break;
-                case "type":
-                    resource.setType(attribute.getValue().toString());
-            }
-        }
+    /**
+     * Reads the attributes by the indices resolved from the feature type when opening the shapefile.
+     */
+    private void setResourceFields(Resource resource, SimpleFeature feature) {
+
+        if (idIndex != -1) resource.setId(getStringValue(feature.getAttribute(idIndex)));
     }
 
 
+    /**
+     * @return the value as string or null if the attribute is null or empty
+     */
+    private static String getStringValue(Object value) {
+
+        if (value == null) return null;
+
+        String stringValue = value.toString().trim();
+
+        return stringValue.isEmpty() ? null : stringValue;
+    }
+
+
+    /**
+     * Converts the JTS geometry directly. The WKT representation is only used as a fallback for geometry classes
+     * not handled by the converter.
+     */
     private static Geometry getGeometry(SimpleFeature feature) throws Exception {
 
-        String wkt = feature.getDefaultGeometryProperty().getValue().toString();
+        Object value = feature.getDefaultGeometry();
+        if (value == null) throw new Exception("Missing geometry for feature " + feature.getID());
+
+        if (value instanceof org.locationtech.jts.geom.Geometry) {
+            Geometry geometry = GeometryConverter.convert((org.locationtech.jts.geom.Geometry) value);
+            if (geometry != null) return geometry;
+        }
+
+        String wkt = value.toString();
 
         if (wkt.startsWith("MULTIPOINT")) {
             return WktParser.getMultiPointGeometry(wkt);
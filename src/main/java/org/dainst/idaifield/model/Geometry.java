@@ -2,12 +2,25 @@ package org.dainst.idaifield.model;
 
 
 /**
+ * The coordinates are stored in a single packed array of ordinates, with the x, y and (if the dimension is 3) z
+ * ordinates of each vertex following each other. The structure is described by two offset tables:
+ *
+ * - The rings of part p are the rings from partOffsets[p] (inclusive) to partOffsets[p + 1] (exclusive).
+ * - The vertices of ring r are the vertices from ringOffsets[r] (inclusive) to ringOffsets[r + 1] (exclusive).
+ *
+ * A multipoint consists of one part with one ring containing all points, a multipolyline of one part with one ring
+ * per polyline and a multipolygon of one part per polygon with one ring per linear ring. In three-dimensional
+ * geometries, vertices without a z value have a z ordinate of NaN.
+ *
  * @author Thomas Kleinke
  */
 public class Geometry {
 
     private GeometryType type;
-    private double[][][][] coordinates;
+    private int dimension = 2;
+    private double[] ordinates = new double[0];
+    private int[] partOffsets = { 0 };
+    private int[] ringOffsets = { 0 };
 
 
     public GeometryType getType() {
@@ -22,15 +35,149 @@ public class Geometry {
     }
 
 
+    /**
+     * @return the number of ordinates per vertex, either 2 or 3
+     */
+    public int getDimension() {
+
+        return dimension;
+    }
+
+
+    public double[] getOrdinates() {
+
+        return ordinates;
+    }
+
+
+    public int[] getPartOffsets() {
+
+        return partOffsets;
+    }
+
+
+    public int[] getRingOffsets() {
+
+        return ringOffsets;
+    }
+
+
+    /**
+     * The arrays are used directly, without being copied.
+     */
+    public void setOrdinates(int dimension, double[] ordinates, int[] partOffsets, int[] ringOffsets) {
+
+        this.dimension = dimension;
+        this.ordinates = ordinates;
+        this.partOffsets = partOffsets;
+        this.ringOffsets = ringOffsets;
+    }
+
+
+    public int getPartCount() {
+
+        return partOffsets.length - 1;
+    }
+
+
+    public int getRingCount() {
+
+        return ringOffsets.length - 1;
+    }
+
+
+    public int getVertexCount() {
+
+        return ordinates.length / dimension;
+    }
+
+
+    public double getX(int vertex) {
+
+        return ordinates[vertex * dimension];
+    }
+
+
+    public double getY(int vertex) {
+
+        return ordinates[vertex * dimension + 1];
+    }
+
+
+    /**
+     * @return the z value of the vertex or NaN if the vertex has none
+     */
+    public double getZ(int vertex) {
+
+        return dimension == 3 ? ordinates[vertex * dimension + 2] : Double.NaN;
+    }
+
+
+    /**
+     * @return the coordinates as nested arrays (parts, rings, vertices, ordinates). The arrays are created on each
+     * call and are not backed by the geometry.
+     */
     public double[][][][] getCoordinates() {
 
+        double[][][][] coordinates = new double[getPartCount()][][][];
+
+        for (int part = 0; part < coordinates.length; part++) {
+            coordinates[part] = new double[partOffsets[part + 1] - partOffsets[part]][][];
+
+            for (int i = 0; i < coordinates[part].length; i++) {
+                int ring = partOffsets[part] + i;
+                coordinates[part][i] = new double[ringOffsets[ring + 1] - ringOffsets[ring]][];
+
+                for (int j = 0; j < coordinates[part][i].length; j++) {
+                    coordinates[part][i][j] = getVertexCoordinates(ringOffsets[ring] + j);
+                }
+            }
+        }
+
         return coordinates;
     }
 
 
+    /**
+     * Packs the given nested coordinates (parts, rings, vertices, ordinates).
+     */
     public void setCoordinates(double[][][][] coordinates) {
 
-        this.coordinates = coordinates;
+        int ringCount = 0;
+        int vertexCount = 0;
+        int dimension = 2;
+
+        for (double[][][] part : coordinates) {
+            ringCount += part.length;
+            for (double[][] ring : part) {
+                vertexCount += ring.length;
+                for (double[] vertex : ring) {
+                    if (vertex.length > 2) dimension = 3;
+                }
+            }
+        }
+
+        double[] ordinates = new double[vertexCount * dimension];
+        int[] partOffsets = new int[coordinates.length + 1];
+        int[] ringOffsets = new int[ringCount + 1];
+
+        int ring = 0;
+        int index = 0;
+
+        for (int part = 0; part < coordinates.length; part++) {
+            for (double[][] ringCoordinates : coordinates[part]) {
+                for (double[] vertex : ringCoordinates) {
+                    ordinates[index] = vertex[0];
+                    ordinates[index + 1] = vertex[1];
+                    if (dimension == 3) ordinates[index + 2] = vertex.length > 2 ? vertex[2] : Double.NaN;
+                    index += dimension;
+                }
+                ringOffsets[++ring] = index / dimension;
+            }
+            partOffsets[part + 1] = ring;
+        }
+
+        setOrdinates(dimension, ordinates, partOffsets, ringOffsets);
     }
 
 
@@ -38,19 +185,19 @@ public class Geometry {
 
         switch(type) {
             case MULTIPOINT:
-                if (coordinates[0][0].length > 1) {
+                if (getVertexCount() > 1) {
                     return "MultiPoint";
                 } else {
                     return "Point";
                 }
             case MULTIPOLYLINE:
-                if (coordinates[0].length > 1) {
+                if (getRingCount() > 1) {
                     return "MultiLineString";
                 } else {
                     return "LineString";
                 }
             case MULTIPOLYGON:
-                if (coordinates.length > 1) {
+                if (getPartCount() > 1) {
                     return "MultiPolygon";
                 } else {
                     return "Polygon";
@@ -59,4 +206,14 @@ public class Geometry {
                 return null;
         }
     }
+
+
+    private double[] getVertexCoordinates(int vertex) {
+
+        double z = getZ(vertex);
+
+        return Double.isNaN(z)
+                ? new double[] { getX(vertex), getY(vertex) }
+                : new double[] { getX(vertex), getY(vertex), z };
+    }
 }
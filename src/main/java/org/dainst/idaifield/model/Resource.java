@@ -1,5 +1,8 @@
 package org.dainst.idaifield.model;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * @author Thomas Kleinke
@@ -11,6 +14,7 @@ public class Resource {
     private String shortDescription;
     private String type;
     private Geometry geometry;
+    private List<String> recordedInIds = new ArrayList<>();
 
 
     public String getId() {
@@ -71,4 +75,19 @@ public class Resource {
 
         this.geometry = geometry;
     }
+
+
+    /**
+     * @return the IDs of the resources (operations) targeted by the isRecordedIn relation
+     */
+    public List<String> getRecordedInIds() {
+
+        return recordedInIds;
+    }
+
+
+    public void setRecordedInIds(List<String> recordedInIds) {
+
+        this.recordedInIds = recordedInIds;
+    }
 }
@@ -0,0 +1,182 @@
+package org.dainst.idaifield.cache;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.dainst.idaifield.model.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+public class ResourceCacheTest extends TestCase {
+
+    private File folder;
+
+
+    @Override
+    protected void setUp() throws IOException {
+
+        folder = Files.createTempDirectory("resource-cache").toFile();
+    }
+
+
+    @Override
+    protected void tearDown() throws IOException {
+
+        FileUtils.deleteDirectory(folder);
+    }
+
+
+    public void testGetAndPut() throws IOException {
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            assertNull(cache.get("r1", "1-a"));
+
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+            Resource resource = cache.get("r1", "1-a");
+
+            assertNotNull(resource);
+            assertEquals("r1", resource.getId());
+            assertEquals(5, resource.getGeometry().getVertexCount());
+        }
+    }
+
+
+    public void testChangedRevision() throws IOException {
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+
+            assertNull(cache.get("r1", "2-b"));
+            assertNull(cache.get("r1", "1-a"));
+        }
+    }
+
+
+    public void testReopen() throws IOException {
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+            cache.put("r2", "1-b", ResourceSerializerTest.createResource("r2", 3));
+        }
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            assertEquals("r1", cache.get("r1", "1-a").getId());
+            assertEquals(3, cache.get("r2", "1-b").getGeometry().getDimension());
+        }
+    }
+
+
+    public void testEviction() throws IOException {
+
+        long entrySize;
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+        }
+        entrySize = new File(folder, "resources.data").length();
+
+        try (ResourceCache cache = new ResourceCache(folder, entrySize * 2)) {
+            cache.put("r2", "1-b", ResourceSerializerTest.createResource("r2", 2));
+            assertNotNull(cache.get("r1", "1-a"));
+            cache.put("r3", "1-c", ResourceSerializerTest.createResource("r3", 2));
+
+            assertNull(cache.get("r2", "1-b"));
+            assertNotNull(cache.get("r1", "1-a"));
+            assertNotNull(cache.get("r3", "1-c"));
+        }
+    }
+
+
+    public void testCompaction() throws IOException {
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            for (int revision = 1; revision <= 5; revision++) {
+                cache.put("r1", revision + "-a", ResourceSerializerTest.createResource("r1", 2));
+            }
+        }
+
+        long compactedSize = new File(folder, "resources.data").length();
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            assertNotNull(cache.get("r1", "5-a"));
+            cache.put("r2", "1-b", ResourceSerializerTest.createResource("r2", 2));
+        }
+
+        assertEquals(compactedSize * 2, new File(folder, "resources.data").length());
+    }
+
+
+    public void testCorruptEntry() throws IOException {
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+        }
+
+        try (RandomAccessFile data = new RandomAccessFile(new File(folder, "resources.data"), "rw")) {
+            data.writeInt(Integer.MAX_VALUE);
+        }
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            assertNull(cache.get("r1", "1-a"));
+
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+            assertNotNull(cache.get("r1", "1-a"));
+        }
+    }
+
+
+    public void testConcurrentCaches() throws Exception {
+
+        CountDownLatch opened = new CountDownLatch(1);
+        AtomicBoolean firstCacheClosed = new AtomicBoolean();
+        AtomicBoolean waited = new AtomicBoolean();
+
+        Thread thread = new Thread(() -> {
+            try {
+                opened.await();
+                try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+                    waited.set(firstCacheClosed.get());
+                    cache.put("r2", "1-b", ResourceSerializerTest.createResource("r2", 2));
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            opened.countDown();
+            Thread.sleep(200);
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+            firstCacheClosed.set(true);
+        }
+
+        thread.join();
+        assertTrue(waited.get());
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            assertNotNull(cache.get("r1", "1-a"));
+            assertNotNull(cache.get("r2", "1-b"));
+        }
+    }
+
+
+    public void testTruncatedDataFile() throws IOException {
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            cache.put("r1", "1-a", ResourceSerializerTest.createResource("r1", 2));
+        }
+
+        try (RandomAccessFile data = new RandomAccessFile(new File(folder, "resources.data"), "rw")) {
+            data.setLength(data.length() - 1);
+        }
+
+        try (ResourceCache cache = new ResourceCache(folder, 1024 * 1024)) {
+            assertNull(cache.get("r1", "1-a"));
+        }
+    }
+}
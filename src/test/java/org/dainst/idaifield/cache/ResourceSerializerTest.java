@@ -0,0 +1,177 @@
+package org.dainst.idaifield.cache;
+
+import junit.framework.TestCase;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+
+public class ResourceSerializerTest extends TestCase {
+
+    public void testRoundTrip() throws IOException {
+
+        Resource resource = createResource("r1", 3);
+        resource.setShortDescription("Fläche");
+        resource.setRecordedInIds(Arrays.asList("op1", "op2"));
+
+        Resource result = read(write(resource));
+
+        assertEquals("r1", result.getId());
+        assertEquals("identifier-r1", result.getIdentifier());
+        assertEquals("Fläche", result.getShortDescription());
+        assertEquals("Feature", result.getType());
+        assertEquals(Arrays.asList("op1", "op2"), result.getRecordedInIds());
+
+        Geometry geometry = result.getGeometry();
+        assertEquals(GeometryType.MULTIPOLYGON, geometry.getType());
+        assertEquals(3, geometry.getDimension());
+        assertTrue(Arrays.equals(resource.getGeometry().getOrdinates(), geometry.getOrdinates()));
+        assertTrue(Arrays.equals(resource.getGeometry().getPartOffsets(), geometry.getPartOffsets()));
+        assertTrue(Arrays.equals(resource.getGeometry().getRingOffsets(), geometry.getRingOffsets()));
+    }
+
+
+    public void testNullValues() throws IOException {
+
+        Resource resource = new Resource();
+        resource.setRecordedInIds(Collections.emptyList());
+
+        Resource result = read(write(resource));
+
+        assertNull(result.getId());
+        assertNull(result.getShortDescription());
+        assertNull(result.getGeometry());
+        assertTrue(result.getRecordedInIds().isEmpty());
+    }
+
+
+    public void testTruncatedData() throws IOException {
+
+        byte[] bytes = write(createResource("r1", 2));
+
+        for (int length = 0; length < bytes.length; length++) {
+            assertInvalid(Arrays.copyOf(bytes, length));
+        }
+    }
+
+
+    public void testInvalidStringLength() throws IOException {
+
+        byte[] bytes = write(createResource("r1", 2));
+        ByteBuffer.wrap(bytes).putInt(0, Integer.MAX_VALUE);
+        assertInvalid(bytes);
+
+        ByteBuffer.wrap(bytes).putInt(0, -5);
+        assertInvalid(bytes);
+    }
+
+
+    public void testInvalidGeometryType() throws IOException {
+
+        byte[] bytes = write(createResource("r1", 2));
+        bytes[getGeometryPosition(bytes)] = 7;
+
+        assertInvalid(bytes);
+    }
+
+
+    public void testInvalidOrdinateCount() throws IOException {
+
+        byte[] bytes = write(createResource("r1", 2));
+        ByteBuffer.wrap(bytes).putInt(getGeometryPosition(bytes) + 2, -1);
+        assertInvalid(bytes);
+
+        ByteBuffer.wrap(bytes).putInt(getGeometryPosition(bytes) + 2, Integer.MAX_VALUE);
+        assertInvalid(bytes);
+    }
+
+
+    public void testInvalidOffsets() throws IOException {
+
+        byte[] bytes = write(createResource("r1", 2));
+        int lastRingOffsetPosition = bytes.length - 4;
+        ByteBuffer.wrap(bytes).putInt(lastRingOffsetPosition, 100);
+
+        assertInvalid(bytes);
+    }
+
+
+    private static void assertInvalid(byte[] bytes) {
+
+        try {
+            read(bytes);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+
+    /**
+     * @return the position of the geometry type, which follows the strings and recordedIn IDs
+     */
+    private static int getGeometryPosition(byte[] bytes) {
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < 4; i++) {
+            skipString(buffer);
+        }
+        int recordedInCount = buffer.getInt();
+        for (int i = 0; i < recordedInCount; i++) {
+            skipString(buffer);
+        }
+
+        return buffer.position();
+    }
+
+
+    private static void skipString(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        if (length > 0) buffer.position(buffer.position() + length);
+    }
+
+
+    static Resource createResource(String id, int dimension) {
+
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setIdentifier("identifier-" + id);
+        resource.setType("Feature");
+        resource.setRecordedInIds(Collections.singletonList("op1"));
+
+        double[] vertex = dimension == 3 ? new double[] { 0, 0, 1 } : new double[] { 0, 0 };
+        double[][] ring = { vertex, { 0, 10 }, { 10, 10 }, { 10, 0 }, vertex };
+
+        Geometry geometry = new Geometry();
+        geometry.setType(GeometryType.MULTIPOLYGON);
+        geometry.setCoordinates(new double[][][][] { { ring } });
+        resource.setGeometry(geometry);
+
+        return resource;
+    }
+
+
+    private static byte[] write(Resource resource) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResourceSerializer.write(resource, new DataOutputStream(bytes));
+
+        return bytes.toByteArray();
+    }
+
+
+    private static Resource read(byte[] bytes) throws IOException {
+
+        return ResourceSerializer.read(new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length);
+    }
+}
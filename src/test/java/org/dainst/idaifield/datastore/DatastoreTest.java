@@ -0,0 +1,278 @@
+package org.dainst.idaifield.datastore;
+
+import junit.framework.TestCase;
+import org.dainst.idaifield.model.Resource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Runs the requests of the datastore against a local stand-in of the sync server.
+ */
+public class DatastoreTest extends TestCase {
+
+    public void testChangesEndingOnPendingCount() throws Exception {
+
+        List<String> ids = new ArrayList<>();
+
+        try (TestServer server = new TestServer(request -> {
+            if (request.contains("since=0")) {
+                return createChanges("2-b", 1L, createChange("r1", false), createChange("r2", false));
+            } else {
+                return createChanges("3-c", 0L, createChange("r3", false));
+            }
+        }); Datastore datastore = new Datastore(server.createConfiguration(2))) {
+            String sequence = datastore.getChanges("project", "0", (documentId, resource) -> ids.add(documentId));
+
+            assertEquals("3-c", sequence);
+            assertEquals(Arrays.asList("r1", "r2", "r3"), ids);
+            assertEquals(2, server.getRequests().size());
+            assertTrue(server.getRequests().get(0).startsWith("GET /project/_changes?"));
+            assertTrue(server.getRequests().get(0).contains("limit=2"));
+            assertTrue(server.getRequests().get(1).contains("since=2-b"));
+        }
+    }
+
+
+    /**
+     * Without a pending count, the changes are complete as soon as a page is not full.
+     */
+    public void testChangesEndingOnShortPage() throws Exception {
+
+        List<String> ids = new ArrayList<>();
+
+        try (TestServer server = new TestServer(request -> {
+            if (request.contains("since=0")) {
+                return createChanges("2-b", null, createChange("r1", false), createChange("r2", false));
+            } else if (request.contains("since=2-b")) {
+                return createChanges("3-c", null, createChange("r3", false));
+            } else {
+                throw new Exception("Unexpected request");
+            }
+        }); Datastore datastore = new Datastore(server.createConfiguration(2))) {
+            assertEquals("3-c", datastore.getChanges("project", "0",
+                    (documentId, resource) -> ids.add(documentId)));
+            assertEquals(Arrays.asList("r1", "r2", "r3"), ids);
+            assertEquals(2, server.getRequests().size());
+        }
+    }
+
+
+    /**
+     * A full page which does not advance the sequence ends the paging instead of requesting it again.
+     */
+    public void testChangesEndingOnUnchangedSequence() throws Exception {
+
+        try (TestServer server = new TestServer(request -> createChanges("5-e", null,
+                createChange("r1", false), createChange("r2", false)));
+             Datastore datastore = new Datastore(server.createConfiguration(2))) {
+            assertEquals("5-e", datastore.getChanges("project", "5-e", (documentId, resource) -> {}));
+            assertEquals(1, server.getRequests().size());
+        }
+    }
+
+
+    public void testDeletedDocuments() throws Exception {
+
+        List<String> ids = new ArrayList<>();
+        List<Resource> resources = new ArrayList<>();
+
+        try (TestServer server = new TestServer(request -> createChanges("3-c", 0L,
+                createChange("r1", false),
+                createChange("r2", true),
+                "{ \"seq\": \"3-c\", \"id\": \"_design/d\", \"changes\": [], \"doc\": { \"_id\": \"_design/d\" } }"));
+             Datastore datastore = new Datastore(server.createConfiguration(10))) {
+            datastore.getChanges("project", "0", (documentId, resource) -> {
+                ids.add(documentId);
+                resources.add(resource);
+            });
+        }
+
+        assertEquals(Arrays.asList("r1", "r2", "_design/d"), ids);
+        assertEquals("r1", resources.get(0).getId());
+        assertEquals(Arrays.asList("op1"), resources.get(0).getRecordedInIds());
+        assertNull(resources.get(1));
+        assertNull(resources.get(2));
+    }
+
+
+    public void testInvalidChangesResponse() throws Exception {
+
+        try (TestServer server = new TestServer(request -> { throw new Exception("Unavailable"); });
+             Datastore datastore = new Datastore(server.createConfiguration(10))) {
+            datastore.getChanges("project", "0", (documentId, resource) -> {});
+            fail("Expected exception");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().startsWith("Invalid response"));
+        }
+    }
+
+
+    public void testUpdateSequence() throws Exception {
+
+        try (TestServer server = new TestServer(request -> "{ \"db_name\": \"project\", \"update_seq\": \"7-g\" }");
+             Datastore datastore = new Datastore(server.createConfiguration(10))) {
+            assertEquals("7-g", datastore.getUpdateSequence("project"));
+            assertEquals(Arrays.asList("GET /project/"), server.getRequests());
+        }
+    }
+
+
+    public void testSelector() {
+
+        JSONObject selector = new JSONObject(Datastore.createSelector(null, new ResourceFilter()));
+
+        assertEquals(1, selector.length());
+        assertTrue(selector.getJSONObject("resource.geometry").isNull("$gt"));
+    }
+
+
+    public void testSelectorWithTypes() {
+
+        ResourceFilter filter = new ResourceFilter();
+        filter.setTypes(Collections.singletonList("Feature"));
+
+        assertEquals("Feature", new JSONObject(Datastore.createSelector(null, filter)).getString("resource.type"));
+
+        filter.setTypes(Arrays.asList("Feature", "Layer \"1\""));
+
+        JSONArray types = new JSONObject(Datastore.createSelector(null, filter)).getJSONObject("resource.type")
+                .getJSONArray("$in");
+        assertEquals(Arrays.asList("Feature", "Layer \"1\""), types.toList());
+    }
+
+
+    /**
+     * The operation itself and the resources recorded in it are selected.
+     */
+    public void testSelectorWithTypesAndOperations() {
+
+        ResourceFilter filter = new ResourceFilter();
+        filter.setTypes(Arrays.asList("Feature", "Layer"));
+
+        JSONObject selector = new JSONObject(Datastore.createSelector(Arrays.asList("op1", "op2"), filter));
+
+        assertTrue(selector.has("resource.geometry"));
+        assertEquals(2, selector.getJSONObject("resource.type").getJSONArray("$in").length());
+
+        JSONArray alternatives = selector.getJSONArray("$or");
+        assertEquals(2, alternatives.length());
+        assertEquals(Arrays.asList("op1", "op2"), alternatives.getJSONObject(0).getJSONObject("resource.id")
+                .getJSONArray("$in").toList());
+        assertEquals(Arrays.asList("op1", "op2"), alternatives.getJSONObject(1)
+                .getJSONObject("resource.relations.isRecordedIn").getJSONObject("$elemMatch").getJSONArray("$in")
+                .toList());
+        assertFalse(selector.has("$and"));
+    }
+
+
+    public void testSelectorWithModificationDate() {
+
+        ResourceFilter filter = new ResourceFilter();
+        filter.setModifiedSince("2020-01-31T00:00:00.000Z");
+
+        JSONArray alternatives = new JSONObject(Datastore.createSelector(null, filter)).getJSONArray("$or");
+
+        assertModificationDateAlternatives(alternatives, "2020-01-31T00:00:00.000Z");
+    }
+
+
+    /**
+     * Both alternatives (operation and modification date) have to match.
+     */
+    public void testSelectorWithTypesOperationsAndModificationDate() {
+
+        ResourceFilter filter = new ResourceFilter();
+        filter.setTypes(Collections.singletonList("Feature"));
+        filter.setModifiedSince("2020-01-31T00:00:00.000Z");
+
+        JSONObject selector = new JSONObject(Datastore.createSelector(Collections.singletonList("op1"), filter));
+
+        assertEquals("Feature", selector.getString("resource.type"));
+        assertFalse(selector.has("$or"));
+
+        JSONArray conditions = selector.getJSONArray("$and");
+        assertEquals(2, conditions.length());
+        assertEquals(Collections.singletonList("op1"), conditions.getJSONObject(0).getJSONArray("$or")
+                .getJSONObject(0).getJSONObject("resource.id").getJSONArray("$in").toList());
+        assertModificationDateAlternatives(conditions.getJSONObject(1).getJSONArray("$or"),
+                "2020-01-31T00:00:00.000Z");
+    }
+
+
+    /**
+     * The selector is sent with each _find request, together with the fields and the page size.
+     */
+    public void testFindRequest() throws Exception {
+
+        ResourceFilter filter = new ResourceFilter();
+        filter.setTypes(Collections.singletonList("Feature"));
+        filter.setBoundingBox(new double[] { 0, 0, 1, 1 });
+
+        List<String> ids = new ArrayList<>();
+
+        try (TestServer server = new TestServer(request -> "{ \"docs\": [" + createDocument("r1", "op1", true)
+                + "] }"); Datastore datastore = new Datastore(server.createConfiguration(10))) {
+            datastore.getResourcesWithGeometry("project", Collections.singletonList("op1"), filter,
+                    Collections.singletonList("identifier"), resources -> {
+                        for (Resource resource : resources) ids.add(resource.getId());
+                    });
+
+            assertEquals(1, server.getRequests().size());
+
+            String request = server.getRequests().get(0);
+            assertTrue(request.startsWith("POST /project/_find "));
+
+            JSONObject query = new JSONObject(request.substring("POST /project/_find ".length()));
+            assertTrue(new JSONObject(Datastore.createSelector(Collections.singletonList("op1"), filter))
+                    .similar(query.getJSONObject("selector")));
+            assertEquals(10, query.getInt("limit"));
+        }
+
+        assertTrue("Outside of the bounding box", ids.isEmpty());
+    }
+
+
+    private static void assertModificationDateAlternatives(JSONArray alternatives, String date) {
+
+        assertEquals(2, alternatives.length());
+        assertEquals(date, alternatives.getJSONObject(0).getJSONObject("created.date").getString("$gte"));
+        assertEquals(date, alternatives.getJSONObject(1).getJSONObject("modified").getJSONObject("$elemMatch")
+                .getJSONObject("date").getString("$gte"));
+    }
+
+
+    static String createChanges(String lastSequence, Long pendingCount, String... changes) {
+
+        return "{ \"results\": [" + String.join(", ", changes) + "], \"last_seq\": \"" + lastSequence + "\""
+                + (pendingCount != null ? ", \"pending\": " + pendingCount : "") + " }";
+    }
+
+
+    static String createChange(String id, boolean deleted) {
+
+        if (deleted) {
+            return "{ \"seq\": \"1\", \"id\": \"" + id + "\", \"deleted\": true, \"doc\": { \"_id\": \"" + id
+                    + "\", \"_deleted\": true } }";
+        }
+
+        return "{ \"seq\": \"1\", \"id\": \"" + id + "\", \"doc\": " + createDocument(id, "op1", true) + " }";
+    }
+
+
+    /**
+     * @return a document of a resource of type Feature recorded in the given operation
+     */
+    public static String createDocument(String id, String operationId, boolean hasGeometry) {
+
+        return "{ \"_id\": \"" + id + "\", \"_rev\": \"1-" + id + "\", \"resource\": { \"id\": \"" + id
+                + "\", \"identifier\": \"identifier-" + id + "\", \"type\": \"Feature\", "
+                + (hasGeometry ? "\"geometry\": { \"type\": \"Point\", \"coordinates\": [1, 2] }, " : "")
+                + "\"relations\": { \"isRecordedIn\": [\"" + operationId + "\"] } } }";
+    }
+}
@@ -0,0 +1,77 @@
+package org.dainst.idaifield.datastore;
+
+import junit.framework.TestCase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+public class DocumentWriterTest extends TestCase {
+
+    public void testDocuments() throws Exception {
+
+        JSONObject document1 = new JSONObject("{\"_id\":\"1\",\"_rev\":\"1-a\",\"resource\":{\"identifier\":"
+                + "\"Befund \\\"1\\\"\",\"relations\":{\"isRecordedIn\":[\"op1\"]},\"width\":2.5,\"valid\":true,"
+                + "\"empty\":null,\"list\":[1,[2,{}],\"ä\"]}}");
+        JSONObject document2 = new JSONObject("{\"_id\":\"2\",\"_deleted\":true}");
+
+        JSONObject body = new JSONObject(write(Arrays.asList(document1, document2)));
+        JSONArray documents = body.getJSONArray("docs");
+
+        assertEquals(2, documents.length());
+        assertTrue(documents.getJSONObject(0).similar(document1));
+        assertTrue(documents.getJSONObject(1).similar(document2));
+    }
+
+
+    public void testNoDocuments() throws Exception {
+
+        assertEquals("{\"docs\":[]}", write(Collections.emptyList()));
+    }
+
+
+    /**
+     * The value writes itself to the writer and is never converted to a string.
+     */
+    public void testWritableValue() throws Exception {
+
+        JSONObject document = new JSONObject();
+        document.put("_id", "1");
+        document.put("geometry", new JSONWritable() {
+
+            @Override
+            public void write(Writer writer) throws IOException {
+
+                writer.write("{\"type\":\"Point\",\"coordinates\":[1,2]}");
+            }
+
+            @Override
+            public String toJSONString() {
+
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        JSONObject writtenDocument = new JSONObject(write(Collections.singletonList(document)))
+                .getJSONArray("docs").getJSONObject(0);
+
+        assertEquals("1", writtenDocument.getString("_id"));
+        assertEquals("Point", writtenDocument.getJSONObject("geometry").getString("type"));
+        assertEquals(2, writtenDocument.getJSONObject("geometry").getJSONArray("coordinates").getInt(1));
+    }
+
+
+    private static String write(List<JSONObject> documents) throws Exception {
+
+        StringWriter writer = new StringWriter();
+        DocumentWriter.writeBulkDocs(documents, writer);
+
+        return writer.toString();
+    }
+}
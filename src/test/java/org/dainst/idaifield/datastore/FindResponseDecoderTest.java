@@ -0,0 +1,121 @@
+package org.dainst.idaifield.datastore;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import junit.framework.TestCase;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+public class FindResponseDecoderTest extends TestCase {
+
+    public void testResources() throws Exception {
+
+        FindResponseDecoder decoder = decode("{ \"docs\": ["
+                + createDocument("r1", "\"type\": \"Point\", \"coordinates\": [1, 2]")
+                + ", " + createDocument("r2", "\"coordinates\": [[[0, 0, 1], [0, 1], [1, 1], [0, 0]]], "
+                + "\"type\": \"Polygon\"")
+                + "], \"bookmark\": \"b1\" }");
+
+        List<Resource> resources = decoder.getResources();
+        assertEquals(2, resources.size());
+        assertEquals(2, decoder.getDocumentCount());
+        assertEquals("b1", decoder.getBookmark());
+        assertEquals(Arrays.asList("r1", "r2"), Arrays.asList(decoder.getRevisions().keySet().toArray()));
+        assertEquals("1-r1", decoder.getRevisions().get("r1"));
+
+        Resource point = resources.get(0);
+        assertEquals("identifier-r1", point.getIdentifier());
+        assertEquals(Collections.singletonList("op1"), point.getRecordedInIds());
+        assertEquals(GeometryType.MULTIPOINT, point.getGeometry().getType());
+        assertTrue(Arrays.equals(new double[] { 1, 2 }, point.getGeometry().getOrdinates()));
+
+        Geometry polygon = resources.get(1).getGeometry();
+        assertEquals(GeometryType.MULTIPOLYGON, polygon.getType());
+        assertEquals(3, polygon.getDimension());
+        assertEquals(1, polygon.getPartCount());
+        assertEquals(4, polygon.getVertexCount());
+        assertTrue(Double.isNaN(polygon.getZ(1)));
+    }
+
+
+    public void testEmptyCoordinates() throws Exception {
+
+        FindResponseDecoder decoder = decode("{ \"docs\": ["
+                + createDocument("r1", "\"type\": \"MultiPolygon\", \"coordinates\": []")
+                + ", " + createDocument("r2", "\"type\": \"Polygon\", \"coordinates\": [[]]")
+                + ", " + createDocument("r3", "\"type\": \"Point\", \"coordinates\": [3, 4]")
+                + "] }");
+
+        assertEquals(1, decoder.getResources().size());
+        assertEquals("r3", decoder.getResources().get(0).getId());
+        assertEquals(3, decoder.getDocumentCount());
+        assertEquals(3, decoder.getRevisions().size());
+    }
+
+
+    public void testNonScalarValues() throws Exception {
+
+        FindResponseDecoder decoder = decode("{ \"docs\": [{ \"_id\": \"r1\", \"_rev\": \"1-r1\", \"resource\": { "
+                + "\"shortDescription\": { \"de\": \"Beschreibung\", \"type\": \"x\" }, "
+                + "\"identifier\": [\"a\"], \"relations\": [], \"geometry\": [1, 2], \"id\": \"r1\", "
+                + "\"type\": \"Feature\" } }, "
+                + createDocument("r2", "\"type\": \"Point\", \"coordinates\": [1, 2]") + "] }");
+
+        assertEquals(2, decoder.getDocumentCount());
+        assertEquals("1-r1", decoder.getRevisions().get("r1"));
+        assertEquals(1, decoder.getResources().size());
+        assertEquals("r2", decoder.getResources().get(0).getId());
+
+        Resource resource = new ResourceDecoder().decodeResource(createParser("{ \"shortDescription\": "
+                + "{ \"de\": \"Beschreibung\", \"id\": \"x\" }, \"id\": \"r1\", \"type\": \"Feature\", "
+                + "\"identifier\": \"i1\" }"));
+
+        assertEquals("r1", resource.getId());
+        assertEquals("i1", resource.getIdentifier());
+        assertEquals("Feature", resource.getType());
+        assertNull(resource.getShortDescription());
+    }
+
+
+    public void testInvalidCoordinates() throws Exception {
+
+        try {
+            decode("{ \"docs\": [" + createDocument("r1", "\"type\": \"Polygon\", \"coordinates\": [1, 2]") + "] }");
+            fail("Expected exception");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().startsWith("Invalid coordinates"));
+        }
+    }
+
+
+    private static FindResponseDecoder decode(String response) throws Exception {
+
+        FindResponseDecoder decoder = new FindResponseDecoder(new JsonFactory().createParser(response));
+        decoder.read();
+
+        return decoder;
+    }
+
+
+    private static JsonParser createParser(String json) throws Exception {
+
+        JsonParser parser = new JsonFactory().createParser(json);
+        parser.nextToken();
+
+        return parser;
+    }
+
+
+    private static String createDocument(String id, String geometry) {
+
+        return "{ \"_id\": \"" + id + "\", \"_rev\": \"1-" + id + "\", \"resource\": { \"id\": \"" + id
+                + "\", \"identifier\": \"identifier-" + id + "\", \"type\": \"Feature\", \"geometry\": { "
+                + geometry + " }, \"relations\": { \"isRecordedIn\": [\"op1\"] } } }";
+    }
+}
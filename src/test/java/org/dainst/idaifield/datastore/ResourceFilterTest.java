@@ -0,0 +1,101 @@
+package org.dainst.idaifield.datastore;
+
+import junit.framework.TestCase;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+
+public class ResourceFilterTest extends TestCase {
+
+    public void testIntersectsBoundingBox() {
+
+        ResourceFilter filter = new ResourceFilter();
+        Geometry line = createGeometry(new double[][] { { 0, 0 }, { 10, 5 } });
+
+        assertTrue(filter.intersectsBoundingBox(line));
+
+        filter.setBoundingBox(new double[] { 5, 2, 20, 20 });
+        assertTrue(filter.intersectsBoundingBox(line));
+
+        filter.setBoundingBox(new double[] { 10, 5, 20, 20 });
+        assertTrue("Touching envelopes intersect", filter.intersectsBoundingBox(line));
+
+        filter.setBoundingBox(new double[] { 10.5, 0, 20, 20 });
+        assertFalse(filter.intersectsBoundingBox(line));
+
+        filter.setBoundingBox(new double[] { -5, -5, 20, -0.1 });
+        assertFalse(filter.intersectsBoundingBox(line));
+
+        filter.setBoundingBox(new double[] { 2, 1, 3, 2 });
+        assertTrue("Bounding box inside the envelope", filter.intersectsBoundingBox(line));
+    }
+
+
+    /**
+     * Only the envelope of the geometry is checked, not the geometry itself.
+     */
+    public void testEnvelopeOnly() {
+
+        ResourceFilter filter = new ResourceFilter();
+        filter.setBoundingBox(new double[] { 8, 0, 10, 2 });
+
+        assertTrue(filter.intersectsBoundingBox(createGeometry(new double[][] { { 0, 0 }, { 0, 10 }, { 10, 10 } })));
+    }
+
+
+    public void testMatches() {
+
+        Resource resource = new Resource();
+        resource.setType("Feature");
+        resource.setGeometry(createGeometry(new double[][] { { 1, 1 } }));
+
+        ResourceFilter filter = new ResourceFilter();
+        assertTrue(filter.matches(resource));
+
+        filter.setTypes(Arrays.asList("Layer", "Feature"));
+        assertTrue(filter.matches(resource));
+
+        filter.setTypes(Collections.singletonList("Layer"));
+        assertFalse(filter.matches(resource));
+
+        filter.setTypes(null);
+        filter.setBoundingBox(new double[] { 2, 2, 3, 3 });
+        assertFalse(filter.matches(resource));
+
+        filter.setModifiedSince("2030-01-01T00:00:00.000Z");
+        filter.setBoundingBox(null);
+        assertTrue("The modification date is not checked", filter.matches(resource));
+    }
+
+
+    public void testKey() {
+
+        ResourceFilter filter1 = new ResourceFilter();
+        filter1.setTypes(Arrays.asList("Feature", "Layer"));
+        ResourceFilter filter2 = new ResourceFilter();
+        filter2.setTypes(Arrays.asList("Layer", "Feature"));
+        ResourceFilter filter3 = new ResourceFilter();
+        filter3.setTypes(Collections.singletonList("Feature, Layer"));
+
+        assertEquals(filter1.getKey(), filter2.getKey());
+        assertFalse(filter1.getKey().equals(filter3.getKey()));
+
+        filter2.setBoundingBox(new double[] { 0, 0, 1, 1 });
+        assertFalse(filter1.getKey().equals(filter2.getKey()));
+        assertFalse(new ResourceFilter().getKey().equals(filter1.getKey()));
+    }
+
+
+    private static Geometry createGeometry(double[][] vertices) {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(vertices.length > 1 ? GeometryType.MULTIPOLYLINE : GeometryType.MULTIPOINT);
+        geometry.setCoordinates(new double[][][][] { { vertices } });
+
+        return geometry;
+    }
+}
@@ -0,0 +1,108 @@
+package org.dainst.idaifield.datastore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Local HTTP server standing in for the sync server. Each request is recorded and answered with the JSON returned
+ * by the handler.
+ */
+public class TestServer implements Closeable {
+
+    public interface Handler {
+
+        /**
+         * @param request the method, the decoded path and query and, if present, the body, separated by spaces
+         * @return the JSON response body
+         */
+        String handle(String request) throws Exception;
+    }
+
+
+    private final HttpServer server;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+
+    public TestServer(Handler handler) throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> respond(exchange, handler));
+        server.start();
+    }
+
+
+    public DatastoreConfiguration createConfiguration(int pageSize) {
+
+        DatastoreConfiguration configuration = new DatastoreConfiguration();
+        configuration.setUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        configuration.setPageSize(pageSize);
+
+        return configuration;
+    }
+
+
+    /**
+     * @return the requests received so far, in the format passed to the handler
+     */
+    public List<String> getRequests() {
+
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+
+    @Override
+    public void close() {
+
+        server.stop(0);
+    }
+
+
+    private void respond(HttpExchange exchange, Handler handler) throws IOException {
+
+        String request = exchange.getRequestMethod() + " "
+                + URLDecoder.decode(exchange.getRequestURI().getRawPath(), "UTF-8")
+                + (exchange.getRequestURI().getRawQuery() != null
+                        ? "?" + URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8")
+                        : "");
+
+        String body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+        if (!body.isEmpty()) request += " " + body;
+
+        requests.add(request);
+
+        int status;
+        byte[] response;
+
+        try {
+            response = handler.handle(request).getBytes(StandardCharsets.UTF_8);
+            status = 200;
+        } catch (Exception e) {
+            response = ("{ \"error\": \"test\", \"reason\": " + JSONObject.quote(String.valueOf(e))
+                    + " }").getBytes(StandardCharsets.UTF_8);
+            status = 500;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(response);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.dainst.idaifield.exporter;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+public class ExportSnapshotTest extends TestCase {
+
+    private File folder;
+    private File file;
+
+
+    @Override
+    protected void setUp() throws IOException {
+
+        folder = Files.createTempDirectory("export-snapshot").toFile();
+        file = new File(folder, "operation.snapshot");
+    }
+
+
+    @Override
+    protected void tearDown() throws IOException {
+
+        FileUtils.deleteDirectory(folder);
+    }
+
+
+    public void testMissingFile() {
+
+        ExportSnapshot snapshot = ExportSnapshot.load(file);
+
+        assertNull(snapshot.getLastSequence());
+        assertTrue(readIds(snapshot).isEmpty());
+    }
+
+
+    public void testSaveAndLoad() throws Exception {
+
+        ExportSnapshot snapshot = ExportSnapshot.load(file);
+        snapshot.putAll(Arrays.asList(createResource("r1", 1), createResource("r2", 2)));
+        snapshot.setLastSequence("12-abc");
+        snapshot.save();
+
+        ExportSnapshot loadedSnapshot = ExportSnapshot.load(file);
+
+        assertEquals("12-abc", loadedSnapshot.getLastSequence());
+        assertEquals(Arrays.asList("r1", "r2"), readIds(loadedSnapshot));
+        assertEquals(1, folder.listFiles().length);
+    }
+
+
+    public void testMergeChanges() throws Exception {
+
+        ExportSnapshot snapshot = ExportSnapshot.load(file);
+        snapshot.putAll(Arrays.asList(createResource("r1", 1), createResource("r2", 1), createResource("r3", 1)));
+        snapshot.setLastSequence("1");
+        snapshot.save();
+
+        snapshot = ExportSnapshot.load(file);
+        snapshot.put(createResource("r2", 5));
+        snapshot.remove("r3");
+        snapshot.remove("r4");
+        snapshot.put(createResource("r4", 1));
+        snapshot.setLastSequence("2");
+        snapshot.save();
+
+        List<Resource> resources = new ArrayList<>();
+        ExportSnapshot.load(file).read(resources::addAll, 2);
+
+        assertEquals(3, resources.size());
+        assertEquals("r1", resources.get(0).getId());
+        assertEquals("r2", resources.get(1).getId());
+        assertEquals(5.0, resources.get(1).getGeometry().getX(0), 0);
+        assertEquals("r4", resources.get(2).getId());
+    }
+
+
+    public void testBatches() throws Exception {
+
+        ExportSnapshot snapshot = ExportSnapshot.load(file);
+        for (int i = 0; i < 5; i++) {
+            snapshot.put(createResource("r" + i, i));
+        }
+
+        List<Integer> batchSizes = new ArrayList<>();
+        snapshot.read(resources -> batchSizes.add(resources.size()), 2);
+
+        assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+    }
+
+
+    public void testTruncatedFile() throws Exception {
+
+        saveSnapshot();
+
+        try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+            data.setLength(data.length() - 3);
+        }
+
+        assertEmpty(ExportSnapshot.load(file));
+    }
+
+
+    public void testCorruptFile() throws Exception {
+
+        saveSnapshot();
+
+        try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+            data.seek(4 + 2 + "12-abc".length());
+            data.writeInt(-7);
+        }
+
+        assertEmpty(ExportSnapshot.load(file));
+    }
+
+
+    public void testGarbageFile() throws Exception {
+
+        byte[] bytes = new byte[1000];
+        Arrays.fill(bytes, (byte) 0x7f);
+        bytes[3] = 1;
+        Files.write(file.toPath(), bytes);
+
+        assertEmpty(ExportSnapshot.load(file));
+    }
+
+
+    private void saveSnapshot() throws IOException {
+
+        ExportSnapshot snapshot = ExportSnapshot.load(file);
+        snapshot.putAll(Arrays.asList(createResource("r1", 1), createResource("r2", 2)));
+        snapshot.setLastSequence("12-abc");
+        snapshot.save();
+    }
+
+
+    private static void assertEmpty(ExportSnapshot snapshot) {
+
+        assertNull(snapshot.getLastSequence());
+        assertTrue(readIds(snapshot).isEmpty());
+    }
+
+
+    private static List<String> readIds(ExportSnapshot snapshot) {
+
+        List<String> ids = new ArrayList<>();
+
+        try {
+            snapshot.read(resources -> {
+                for (Resource resource : resources) {
+                    ids.add(resource.getId());
+                }
+            }, 100);
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+
+        return ids;
+    }
+
+
+    private static Resource createResource(String id, double x) {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(GeometryType.MULTIPOINT);
+        geometry.setCoordinates(new double[][][][] { { { { x, 1 } } } });
+
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setType("Find");
+        resource.setRecordedInIds(Collections.singletonList("op1"));
+        resource.setGeometry(geometry);
+
+        return resource;
+    }
+}
@@ -0,0 +1,109 @@
+package org.dainst.idaifield.exporter;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+
+public class ScratchBufferTest extends TestCase {
+
+    public void testInMemory() throws IOException {
+
+        ScratchBuffer buffer = new ScratchBuffer();
+        byte[] data = createData(3 * 1024 * 1024 + 17);
+
+        write(buffer, data);
+
+        assertFalse(buffer.isFileBacked());
+        assertEquals(data.length, buffer.size());
+        assertTrue(Arrays.equals(data, read(buffer)));
+    }
+
+
+    public void testFileBacked() throws IOException {
+
+        ScratchBuffer buffer = new ScratchBuffer(1000);
+        byte[] data = createData(100000);
+
+        write(buffer, data);
+
+        assertTrue(buffer.isFileBacked());
+        assertEquals(data.length, buffer.size());
+        assertTrue(Arrays.equals(data, read(buffer)));
+    }
+
+
+    public void testByteBufferPosition() throws IOException {
+
+        ScratchBuffer buffer = new ScratchBuffer(4);
+        ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, 2, 5);
+
+        buffer.write(byteBuffer);
+
+        assertFalse(byteBuffer.hasRemaining());
+        assertTrue(Arrays.equals(new byte[] { 3, 4, 5, 6, 7 }, read(buffer)));
+    }
+
+
+    public void testClosingStreamReleasesBuffer() throws IOException {
+
+        ScratchBuffer buffer = new ScratchBuffer(10);
+        write(buffer, createData(100));
+
+        read(buffer);
+
+        assertFalse(buffer.isFileBacked());
+        assertEquals(0, buffer.size());
+    }
+
+
+    public void testClear() throws IOException {
+
+        ScratchBuffer buffer = new ScratchBuffer(10);
+        write(buffer, createData(100));
+
+        buffer.clear();
+
+        assertFalse(buffer.isFileBacked());
+        assertEquals(0, read(buffer).length);
+    }
+
+
+    /**
+     * Writes the data in pieces of different sizes.
+     */
+    private static void write(ScratchBuffer buffer, byte[] data) throws IOException {
+
+        int offset = 0;
+        int length = 1;
+
+        while (offset < data.length) {
+            length = Math.min(length, data.length - offset);
+            buffer.write(data, offset, length);
+            offset += length;
+            length = length * 3 % 70000 + 1;
+        }
+    }
+
+
+    private static byte[] read(ScratchBuffer buffer) throws IOException {
+
+        try (InputStream inputStream = buffer.getInputStream()) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+
+    private static byte[] createData(int length) {
+
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+
+        return data;
+    }
+}
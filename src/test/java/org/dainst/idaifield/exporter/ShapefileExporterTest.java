@@ -0,0 +1,178 @@
+package org.dainst.idaifield.exporter;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.dainst.idaifield.datastore.Datastore;
+import org.dainst.idaifield.datastore.DatastoreTest;
+import org.dainst.idaifield.datastore.ResourceFilter;
+import org.dainst.idaifield.datastore.TestServer;
+import org.dainst.idaifield.model.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+public class ShapefileExporterTest extends TestCase {
+
+    private File folder;
+
+
+    @Override
+    protected void setUp() throws IOException {
+
+        folder = Files.createTempDirectory("shapefile-exporter").toFile();
+    }
+
+
+    @Override
+    protected void tearDown() throws IOException {
+
+        FileUtils.deleteDirectory(folder);
+    }
+
+
+    /**
+     * The first run reads the update sequence before fetching all resources via _find, so that no change made
+     * during the _find requests is missed by the next run. The next run applies the changes since that sequence.
+     */
+    public void testIncrementalExport() throws Exception {
+
+        try (TestServer server = new TestServer(request -> {
+            if (request.equals("GET /project/")) {
+                return "{ \"update_seq\": \"10-a\" }";
+            } else if (request.startsWith("POST /project/_find ")) {
+                return "{ \"docs\": [" + DatastoreTest.createDocument("r1", "op1", true) + ", "
+                        + DatastoreTest.createDocument("r2", "op1", true) + ", "
+                        + DatastoreTest.createDocument("r3", "op1", true) + "] }";
+            } else if (request.startsWith("GET /project/_changes?") && request.contains("since=10-a")) {
+                return "{ \"results\": ["
+                        + createChange("r1", DatastoreTest.createDocument("r1", "op2", true)) + ", "
+                        + createChange("r2", DatastoreTest.createDocument("r2", "op1", false)) + ", "
+                        + "{ \"id\": \"r3\", \"deleted\": true, \"doc\": { \"_id\": \"r3\", \"_deleted\": true } }, "
+                        + createChange("r4", DatastoreTest.createDocument("r4", "op1", true)) + ", "
+                        + createChange("r5", DatastoreTest.createDocument("r5", "op2", true))
+                        + "], \"last_seq\": \"15-f\", \"pending\": 0 }";
+            } else {
+                throw new Exception("Unexpected request: " + request);
+            }
+        }); Datastore datastore = new Datastore(server.createConfiguration(10))) {
+            assertEquals(Arrays.asList("r1", "r2", "r3"), readIncrementally(datastore));
+
+            List<String> requests = server.getRequests();
+            assertEquals(2, requests.size());
+            assertEquals("GET /project/", requests.get(0));
+            assertTrue(requests.get(1).startsWith("POST /project/_find "));
+
+            assertEquals(Collections.singletonList("r4"), readIncrementally(datastore));
+
+            requests = server.getRequests();
+            assertEquals(3, requests.size());
+            assertTrue(requests.get(2).contains("since=10-a"));
+        }
+    }
+
+
+    public void testPartitionByOperation() throws Exception {
+
+        List<Resource> resources = Arrays.asList(createResource("op1"), createResource("op2"),
+                createResource("r1", "op1"), createResource("r2", "op1", "op2"), createResource("r3", "op3"),
+                createResource("r4"));
+
+        Map<String, List<Resource>> partitions = ShapefileExporter.partitionByOperation(
+                handler -> ShapefileExporter.readBatches(resources, handler, 2), Arrays.asList("op2", "op1"));
+
+        assertEquals(Arrays.asList("op2", "op1"), new ArrayList<>(partitions.keySet()));
+        assertEquals(Arrays.asList("r1", "r2", "op1"), getIds(partitions.get("op1")));
+        assertEquals(Arrays.asList("r2", "op2"), getIds(partitions.get("op2")));
+
+        partitions = ShapefileExporter.partitionByOperation(
+                handler -> ShapefileExporter.readBatches(resources, handler, 2), null);
+
+        assertEquals(Arrays.asList("op1", "op2", "op3"), new ArrayList<>(partitions.keySet()));
+        assertEquals(Arrays.asList("r1", "r2", "op1"), getIds(partitions.get("op1")));
+        assertEquals(Collections.singletonList("r3"), getIds(partitions.get("op3")));
+    }
+
+
+    public void testBatchSnapshotName() {
+
+        String name = ShapefileExporter.getBatchSnapshotName(Arrays.asList("op2", "op1"));
+
+        assertEquals(name, ShapefileExporter.getBatchSnapshotName(Arrays.asList("op1", "op2")));
+        assertTrue(name.matches("operations-[0-9a-f]{64}"));
+        assertFalse(name.equals(ShapefileExporter.getBatchSnapshotName(Arrays.asList("op1", "op3"))));
+        assertFalse(name.equals(ShapefileExporter.getBatchSnapshotName(Collections.singletonList("op1,op2"))));
+        assertEquals("all-operations", ShapefileExporter.getBatchSnapshotName(null));
+    }
+
+
+    public void testSnapshotSuffix() {
+
+        ResourceFilter filter1 = new ResourceFilter();
+        assertEquals("", ShapefileExporter.getSnapshotSuffix(filter1));
+
+        filter1.setModifiedSince("2020-01-31T00:00:00.000Z");
+        assertEquals("", ShapefileExporter.getSnapshotSuffix(filter1));
+
+        filter1.setTypes(Arrays.asList("Feature", "Layer"));
+        ResourceFilter filter2 = new ResourceFilter();
+        filter2.setTypes(Arrays.asList("Layer", "Feature"));
+
+        String suffix = ShapefileExporter.getSnapshotSuffix(filter1);
+        assertTrue(suffix.matches("-[0-9a-f]{64}"));
+        assertEquals(suffix, ShapefileExporter.getSnapshotSuffix(filter2));
+
+        filter2.setBoundingBox(new double[] { 0, 0, 1, 1 });
+        assertFalse(suffix.equals(ShapefileExporter.getSnapshotSuffix(filter2)));
+    }
+
+
+    private List<String> readIncrementally(Datastore datastore) throws Exception {
+
+        ExportOptions options = new ExportOptions();
+        options.setIncremental(true);
+        options.setCacheFolderPath(folder.getAbsolutePath());
+
+        List<String> ids = new ArrayList<>();
+
+        ShapefileExporter.readIncrementally(datastore, "project", folder.getAbsolutePath(),
+                Collections.singletonList("op1"), "op1", null, options).read(resources -> {
+                    for (Resource resource : resources) ids.add(resource.getId());
+                });
+
+        Collections.sort(ids);
+
+        return ids;
+    }
+
+
+    private static Resource createResource(String id, String... operationIds) {
+
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setRecordedInIds(Arrays.asList(operationIds));
+
+        return resource;
+    }
+
+
+    private static List<String> getIds(List<Resource> resources) {
+
+        List<String> ids = new ArrayList<>();
+        for (Resource resource : resources) ids.add(resource.getId());
+
+        return ids;
+    }
+
+
+    private static String createChange(String id, String document) {
+
+        return "{ \"id\": \"" + id + "\", \"doc\": " + document + " }";
+    }
+}
@@ -0,0 +1,158 @@
+package org.dainst.idaifield.exporter;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+public class ZipArchiveBuilderTest extends TestCase {
+
+    private File folder;
+
+
+    @Override
+    protected void setUp() throws IOException {
+
+        folder = Files.createTempDirectory("zip-archive-builder").toFile();
+    }
+
+
+    @Override
+    protected void tearDown() throws IOException {
+
+        FileUtils.deleteDirectory(folder);
+    }
+
+
+    public void testDeflated() throws Exception {
+
+        assertArchive(createOptions(-1, 1, 1024), ZipEntry.DEFLATED);
+    }
+
+
+    public void testStored() throws Exception {
+
+        assertArchive(createOptions(0, 1, 1024), ZipEntry.STORED);
+    }
+
+
+    public void testParallel() throws Exception {
+
+        assertArchive(createOptions(6, 3, 1024), ZipEntry.DEFLATED);
+    }
+
+
+    /**
+     * Entry names use '/' as separator on every platform, as required by the ZIP format.
+     */
+    public void testBuildZipArchive() throws Exception {
+
+        File inputFolder = new File(folder, "export");
+        FileUtils.writeStringToFile(new File(inputFolder, "points.shp"), "shp", "UTF-8");
+        FileUtils.writeStringToFile(new File(inputFolder, "points.dbf"), "dbf", "UTF-8");
+
+        ZipArchiveBuilder.buildZipArchive(inputFolder, folder.getAbsolutePath(), new ExportOptions());
+
+        try (ZipFile zipFile = new ZipFile(new File(folder, "export.zip"))) {
+            List<String> entryNames = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zipFile.entries())) entryNames.add(entry.getName());
+            Collections.sort(entryNames);
+
+            assertEquals(Arrays.asList("export/points.dbf", "export/points.shp"), entryNames);
+            assertEquals("shp", IOUtils.toString(zipFile.getInputStream(zipFile.getEntry("export/points.shp")),
+                    "UTF-8"));
+        }
+    }
+
+
+    public void testBufferedSeekableChannel() throws IOException {
+
+        File file = new File(folder, "channel");
+
+        try (BufferedSeekableChannel channel = new BufferedSeekableChannel(file, 8)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+            channel.write(ByteBuffer.wrap(new byte[] { 4, 5, 6, 7, 8, 9, 10, 11, 12, 13 }));
+            channel.write(ByteBuffer.wrap(new byte[] { 14 }));
+            assertEquals(14, channel.position());
+            assertEquals(14, channel.size());
+
+            channel.position(1);
+            channel.write(ByteBuffer.wrap(new byte[] { 20, 30 }));
+            assertEquals(3, channel.position());
+
+            channel.position(14);
+            channel.write(ByteBuffer.wrap(new byte[] { 15 }));
+        }
+
+        assertTrue(Arrays.equals(new byte[] { 1, 20, 30, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 },
+                Files.readAllBytes(file.toPath())));
+    }
+
+
+    private void assertArchive(ExportOptions options, int method) throws Exception {
+
+        byte[][] contents = { createData(100), createData(300000), new byte[0], createData(5000) };
+        File zipFile = new File(folder, "archive.zip");
+
+        try (ZipArchiveBuilder zipArchiveBuilder = new ZipArchiveBuilder(zipFile, options)) {
+            for (int i = 0; i < contents.length; i++) {
+                byte[] content = contents[i];
+                zipArchiveBuilder.addEntry("folder/entry" + i, () -> new ByteArrayInputStream(content));
+            }
+            zipArchiveBuilder.finish();
+        }
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(contents.length, zip.size());
+
+            for (int i = 0; i < contents.length; i++) {
+                ZipEntry entry = zip.getEntry("folder/entry" + i);
+                assertEquals(method, entry.getMethod());
+
+                try (InputStream inputStream = zip.getInputStream(entry)) {
+                    assertTrue(Arrays.equals(contents[i], IOUtils.toByteArray(inputStream)));
+                }
+            }
+        }
+    }
+
+
+    private static ExportOptions createOptions(int compressionLevel, int compressionThreads, int zipBufferSize) {
+
+        ExportOptions options = new ExportOptions();
+        options.setCompressionLevel(compressionLevel);
+        options.setCompressionThreads(compressionThreads);
+        options.setZipBufferSize(zipBufferSize);
+
+        return options;
+    }
+
+
+    /**
+     * @return data which compresses, but not to nothing
+     */
+    private static byte[] createData(int length) {
+
+        byte[] data = new byte[length];
+        Random random = new Random(length);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,250 @@
+package org.dainst.idaifield.exporter;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.dainst.idaifield.model.Resource;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Writes layers with the ZipLayerWriter and reads them back with the GeoTools shapefile data store.
+ */
+public class ZipLayerWriterTest extends TestCase {
+
+    private File folder;
+
+
+    @Override
+    protected void setUp() throws IOException {
+
+        folder = Files.createTempDirectory("zip-layer-writer").toFile();
+    }
+
+
+    @Override
+    protected void tearDown() throws IOException {
+
+        FileUtils.deleteDirectory(folder);
+    }
+
+
+    public void testPolygons() throws Exception {
+
+        List<Resource> resources = Arrays.asList(
+                createResource("r1", "Fläche 1", GeometryType.MULTIPOLYGON, new double[][][][] {
+                        { { { 0, 0 }, { 0, 10 }, { 10, 10 }, { 10, 0 } }, { { 2, 2 }, { 4, 2 }, { 4, 4 }, { 2, 4 } } }
+                }),
+                createResource("r2", null, GeometryType.MULTIPOLYGON, new double[][][][] {
+                        { { { 20, 20 }, { 20, 30 }, { 30, 30 }, { 20, 20 } } },
+                        { { { 40, 40 }, { 40, 50 }, { 50, 50 }, { 40, 40 } } }
+                })
+        );
+
+        List<SimpleFeature> features = writeAndRead(GeometryType.MULTIPOLYGON, resources);
+
+        assertEquals(2, features.size());
+        assertFeature(features.get(0), resources.get(0));
+        assertFeature(features.get(1), resources.get(1));
+        assertHeaders(GeometryType.MULTIPOLYGON, 2, 0, 0, 50, 50);
+    }
+
+
+    public void testPolylines() throws Exception {
+
+        List<Resource> resources = Collections.singletonList(
+                createResource("r1", "Linie", GeometryType.MULTIPOLYLINE, new double[][][][] {
+                        { { { 1, 2 }, { 3, 4 } }, { { 5, 6 }, { 7, 8 }, { 9, -1 } } }
+                })
+        );
+
+        List<SimpleFeature> features = writeAndRead(GeometryType.MULTIPOLYLINE, resources);
+
+        assertEquals(1, features.size());
+        assertFeature(features.get(0), resources.get(0));
+        assertHeaders(GeometryType.MULTIPOLYLINE, 1, 1, -1, 9, 8);
+    }
+
+
+    public void testPoints() throws Exception {
+
+        List<Resource> resources = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            resources.add(createResource("r" + i, "Punkt " + i, GeometryType.MULTIPOINT,
+                    new double[][][][] { { { { i, i * 2, i * 3 } } } }));
+        }
+
+        List<SimpleFeature> features = writeAndRead(GeometryType.MULTIPOINT, resources);
+
+        assertEquals(1000, features.size());
+        for (int i = 0; i < features.size(); i++) {
+            assertFeature(features.get(i), resources.get(i));
+        }
+        assertHeaders(GeometryType.MULTIPOINT, 1000, 0, 0, 999, 1998);
+    }
+
+
+    public void testLongValue() throws Exception {
+
+        StringBuilder shortDescription = new StringBuilder();
+        for (int i = 0; i < 200; i++) shortDescription.append('ä');
+
+        List<Resource> resources = Collections.singletonList(createResource("r1", shortDescription.toString(),
+                GeometryType.MULTIPOINT, new double[][][][] { { { { 1, 2 } } } }));
+
+        SimpleFeature feature = writeAndRead(GeometryType.MULTIPOINT, resources).get(0);
+
+        assertEquals(shortDescription.substring(0, 127), ((String) feature.getAttribute("shortdesc")).trim());
+    }
+
+
+    private List<SimpleFeature> writeAndRead(GeometryType geometryType, List<Resource> resources) throws Exception {
+
+        File zipFile = new File(folder, "export.zip");
+
+        try (ZipArchiveBuilder zipArchiveBuilder = new ZipArchiveBuilder(zipFile, new ExportOptions())) {
+            ZipLayerWriter layerWriter = new ZipLayerWriter(zipArchiveBuilder, "export", geometryType, null);
+            layerWriter.write(resources, new GeometryBuilder());
+            layerWriter.close();
+            zipArchiveBuilder.finish();
+        }
+
+        extract(zipFile);
+
+        return readFeatures(getComponent(geometryType, ".shp"));
+    }
+
+
+    private void extract(File zipFile) throws IOException {
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                assertTrue(entry.getName().startsWith("export/"));
+                File file = new File(folder, entry.getName());
+                FileUtils.copyInputStreamToFile(zip.getInputStream(entry), file);
+            }
+        }
+    }
+
+
+    private static List<SimpleFeature> readFeatures(File shapefile) throws IOException {
+
+        ShapefileDataStore dataStore = new ShapefileDataStore(shapefile.toURI().toURL());
+        dataStore.setCharset(StandardCharsets.UTF_8);
+
+        List<SimpleFeature> features = new ArrayList<>();
+
+        try (FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(
+                new Query(dataStore.getTypeNames()[0]), Transaction.AUTO_COMMIT)) {
+            while (reader.hasNext()) features.add(reader.next());
+        } finally {
+            dataStore.dispose();
+        }
+
+        return features;
+    }
+
+
+    private static void assertFeature(SimpleFeature feature, Resource resource) {
+
+        assertEquals(resource.getId(), feature.getAttribute("id"));
+        assertEquals(resource.getIdentifier(), feature.getAttribute("identifier"));
+        assertEquals(resource.getShortDescription() != null ? resource.getShortDescription() : "",
+                feature.getAttribute("shortdesc") != null ? feature.getAttribute("shortdesc") : "");
+        assertEquals(resource.getType(), feature.getAttribute("type"));
+
+        org.locationtech.jts.geom.Geometry expected = new GeometryBuilder().buildGeometry(resource.getGeometry());
+        org.locationtech.jts.geom.Geometry actual = (org.locationtech.jts.geom.Geometry) feature.getDefaultGeometry();
+
+        assertTrue("Expected " + expected + " but was " + actual, expected.equalsTopo(actual));
+    }
+
+
+    /**
+     * Checks the lengths, record counts and bounds written to the headers of the .shp, .shx and .dbf files.
+     */
+    private void assertHeaders(GeometryType geometryType, int recordCount, double minX, double minY, double maxX,
+                               double maxY) throws IOException {
+
+        File shpFile = getComponent(geometryType, ".shp");
+        File shxFile = getComponent(geometryType, ".shx");
+        File dbfFile = getComponent(geometryType, ".dbf");
+
+        ByteBuffer shpHeader = readHeader(shpFile, 100);
+        assertEquals(9994, shpHeader.order(ByteOrder.BIG_ENDIAN).getInt(0));
+        assertEquals(shpFile.length(), shpHeader.getInt(24) * 2L);
+        shpHeader.order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1000, shpHeader.getInt(28));
+        assertEquals(minX, shpHeader.getDouble(36), 0);
+        assertEquals(minY, shpHeader.getDouble(44), 0);
+        assertEquals(maxX, shpHeader.getDouble(52), 0);
+        assertEquals(maxY, shpHeader.getDouble(60), 0);
+
+        ByteBuffer shxHeader = readHeader(shxFile, 100);
+        assertEquals(shxFile.length(), shxHeader.order(ByteOrder.BIG_ENDIAN).getInt(24) * 2L);
+        assertEquals(100 + recordCount * 8L, shxFile.length());
+
+        ByteBuffer dbfHeader = readHeader(dbfFile, 12).order(ByteOrder.LITTLE_ENDIAN);
+        int headerLength = dbfHeader.getShort(8);
+        int recordLength = dbfHeader.getShort(10);
+        assertEquals(recordCount, dbfHeader.getInt(4));
+        assertEquals(headerLength + (long) recordCount * recordLength + 1, dbfFile.length());
+    }
+
+
+    private static ByteBuffer readHeader(File file, int length) throws IOException {
+
+        byte[] header = new byte[length];
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            input.readFully(header);
+        }
+
+        return ByteBuffer.wrap(header);
+    }
+
+
+    private File getComponent(GeometryType geometryType, String extension) {
+
+        return new File(folder, "export" + File.separator + geometryType.name().toLowerCase() + "s" + extension);
+    }
+
+
+    private static Resource createResource(String id, String shortDescription, GeometryType geometryType,
+                                           double[][][][] coordinates) {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(geometryType);
+        geometry.setCoordinates(coordinates);
+
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setIdentifier("identifier-" + id);
+        resource.setShortDescription(shortDescription);
+        resource.setType("Feature");
+        resource.setRecordedInIds(Collections.singletonList("op1"));
+        resource.setGeometry(geometry);
+
+        return resource;
+    }
+}
@@ -0,0 +1,131 @@
+package org.dainst.idaifield.importer;
+
+import junit.framework.TestCase;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+import org.json.JSONObject;
+
+
+public class GeometryComparatorTest extends TestCase {
+
+    private static final double[][] closedShell = { { 0, 0 }, { 0, 10 }, { 10, 10 }, { 10, 0 }, { 0, 0 } };
+    private static final double[][] closedHole = { { 2, 2 }, { 4, 2 }, { 4, 4 }, { 2, 4 }, { 2, 2 } };
+
+
+    public void testClosedAndUnclosedRing() {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOLYGON, closedShell);
+
+        assertTrue(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("Polygon", "[[[0,0],[0,10],[10,10],[10,0]]]"), 0));
+        assertTrue(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("Polygon", "[[[0,0],[0,10],[10,10],[10,0],[0,0]]]"), 0));
+    }
+
+
+    public void testReversedRing() {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOLYGON, closedShell, closedHole);
+
+        assertTrue(GeometryComparator.isEqual(geometry, createStoredGeometry("Polygon",
+                "[[[0,0],[10,0],[10,10],[0,10],[0,0]],[[2,2],[2,4],[4,4],[4,2],[2,2]]]"), 0));
+    }
+
+
+    public void testRotatedRing() {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOLYGON, closedShell);
+
+        assertTrue(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("Polygon", "[[[10,10],[10,0],[0,0],[0,10]]]"), 0));
+        assertTrue(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("MultiPolygon", "[[[[10,0],[0,0],[0,10],[10,10],[10,0]]]]"), 0));
+    }
+
+
+    public void testChangedRing() {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOLYGON, closedShell);
+
+        assertFalse(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("Polygon", "[[[0,0],[0,10],[10,11],[10,0]]]"), 0));
+        assertFalse(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("Polygon", "[[[0,0],[10,10],[0,10],[10,0]]]"), 0));
+        assertTrue(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("Polygon", "[[[0,0],[0,10],[10,10.001],[10,0]]]"), 0.01));
+    }
+
+
+    public void testMissingZValue() {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(GeometryType.MULTIPOLYLINE);
+        geometry.setOrdinates(3, new double[] { 1, 2, Double.NaN, 3, 4, Double.NaN }, new int[] { 0, 1 },
+                new int[] { 0, 2 });
+
+        assertTrue(GeometryComparator.isEqual(geometry, createStoredGeometry("LineString", "[[1,2],[3,4]]"), 0));
+        assertFalse(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("LineString", "[[1,2,0],[3,4,0]]"), 0));
+    }
+
+
+    public void testZValue() {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(GeometryType.MULTIPOINT);
+        geometry.setOrdinates(3, new double[] { 1, 2, 5 }, new int[] { 0, 1 }, new int[] { 0, 1 });
+
+        assertTrue(GeometryComparator.isEqual(geometry, createStoredGeometry("Point", "[1,2,5]"), 0));
+        assertFalse(GeometryComparator.isEqual(geometry, createStoredGeometry("Point", "[1,2]"), 0));
+        assertFalse(GeometryComparator.isEqual(geometry, createStoredGeometry("Point", "[1,2,6]"), 0));
+    }
+
+
+    public void testPointAndMultiPoint() {
+
+        Geometry point = createGeometry(GeometryType.MULTIPOINT, new double[][] { { 1, 2 } });
+
+        assertTrue(GeometryComparator.isEqual(point, createStoredGeometry("Point", "[1,2]"), 0));
+        assertTrue(GeometryComparator.isEqual(point, createStoredGeometry("MultiPoint", "[[1,2]]"), 0));
+
+        Geometry multiPoint = createGeometry(GeometryType.MULTIPOINT, new double[][] { { 1, 2 }, { 3, 4 } });
+
+        assertTrue(GeometryComparator.isEqual(multiPoint, createStoredGeometry("MultiPoint", "[[3,4],[1,2]]"), 0));
+        assertFalse(GeometryComparator.isEqual(multiPoint, createStoredGeometry("Point", "[1,2]"), 0));
+    }
+
+
+    public void testDifferentType() {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOLYLINE, closedShell);
+
+        assertFalse(GeometryComparator.isEqual(geometry,
+                createStoredGeometry("Polygon", "[[[0,0],[0,10],[10,10],[10,0],[0,0]]]"), 0));
+        assertFalse(GeometryComparator.isEqual(geometry, null, 0));
+    }
+
+
+    public void testMalformedStoredGeometry() {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOINT, new double[][] { { 1, 2 } });
+
+        assertFalse(GeometryComparator.isEqual(geometry, createStoredGeometry("Point", "[1]"), 0));
+        assertFalse(GeometryComparator.isEqual(geometry, createStoredGeometry("MultiPoint", "[1,2]"), 0));
+    }
+
+
+    private static Geometry createGeometry(GeometryType type, double[][]... rings) {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(type);
+        geometry.setCoordinates(new double[][][][] { rings });
+
+        return geometry;
+    }
+
+
+    private static JSONObject createStoredGeometry(String type, String coordinates) {
+
+        return new JSONObject("{\"type\":\"" + type + "\",\"coordinates\":" + coordinates + "}");
+    }
+}
@@ -0,0 +1,119 @@
+package org.dainst.idaifield.importer;
+
+import junit.framework.TestCase;
+import org.dainst.idaifield.model.Geometry;
+import org.dainst.idaifield.model.GeometryType;
+
+import java.io.StringWriter;
+
+
+public class GeometrySerializerTest extends TestCase {
+
+    public void testPoint() throws Exception {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOINT, new double[][][][] { { { { 1, 2 } } } });
+
+        assertSerialized("{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}", geometry);
+    }
+
+
+    public void testMultiPoint() throws Exception {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOINT,
+                new double[][][][] { { { { 1, 2, 3 }, { 4.5, -6 } } } });
+
+        assertSerialized("{\"type\":\"MultiPoint\",\"coordinates\":[[1.0,2.0,3.0],[4.5,-6.0]]}", geometry);
+    }
+
+
+    public void testLineStrings() throws Exception {
+
+        assertSerialized("{\"type\":\"LineString\",\"coordinates\":[[0.0,0.0],[1.0,1.0]]}",
+                createGeometry(GeometryType.MULTIPOLYLINE, new double[][][][] { { { { 0, 0 }, { 1, 1 } } } }));
+        assertSerialized("{\"type\":\"MultiLineString\",\"coordinates\":[[[0.0,0.0],[1.0,1.0]],[[2.0,2.0],"
+                + "[3.0,3.0]]]}", createGeometry(GeometryType.MULTIPOLYLINE,
+                new double[][][][] { { { { 0, 0 }, { 1, 1 } }, { { 2, 2 }, { 3, 3 } } } }));
+    }
+
+
+    public void testPolygons() throws Exception {
+
+        double[][] shell = { { 0, 0 }, { 0, 10 }, { 10, 10 }, { 0, 0 } };
+        double[][] hole = { { 1, 1 }, { 2, 1 }, { 2, 2 }, { 1, 1 } };
+
+        assertSerialized("{\"type\":\"Polygon\",\"coordinates\":[[[0.0,0.0],[0.0,10.0],[10.0,10.0],[0.0,0.0]],"
+                + "[[1.0,1.0],[2.0,1.0],[2.0,2.0],[1.0,1.0]]]}",
+                createGeometry(GeometryType.MULTIPOLYGON, new double[][][][] { { shell, hole } }));
+        assertSerialized("{\"type\":\"MultiPolygon\",\"coordinates\":[[[[0.0,0.0],[0.0,10.0],[10.0,10.0],"
+                + "[0.0,0.0]]],[[[1.0,1.0],[2.0,1.0],[2.0,2.0],[1.0,1.0]]]]}",
+                createGeometry(GeometryType.MULTIPOLYGON, new double[][][][] { { shell }, { hole } }));
+    }
+
+
+    public void testMissingZValue() throws Exception {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(GeometryType.MULTIPOLYLINE);
+        geometry.setOrdinates(3, new double[] { 1, 2, Double.NaN, 3, 4, 5 }, new int[] { 0, 1 },
+                new int[] { 0, 2 });
+
+        assertSerialized("{\"type\":\"LineString\",\"coordinates\":[[1.0,2.0],[3.0,4.0,5.0]]}", geometry);
+    }
+
+
+    public void testNonFiniteOrdinate() {
+
+        Geometry geometry = createGeometry(GeometryType.MULTIPOINT,
+                new double[][][][] { { { { 1, Double.POSITIVE_INFINITY } } } });
+
+        try {
+            new GeometrySerializer(geometry, "r1");
+            fail();
+        } catch (Exception expected) {
+            assertTrue(expected.getMessage().startsWith("Invalid coordinates"));
+            assertTrue(expected.getMessage().endsWith("r1"));
+        }
+    }
+
+
+    /**
+     * A null shape record is converted to a geometry without vertices.
+     */
+    public void testEmptyGeometry() {
+
+        for (GeometryType type : GeometryType.values()) {
+            Geometry geometry = new Geometry();
+            geometry.setType(type);
+            geometry.setOrdinates(2, new double[0], new int[] { 0 }, new int[] { 0 });
+
+            try {
+                new GeometrySerializer(geometry, "r1");
+                fail();
+            } catch (Exception expected) {
+                assertEquals("Invalid coordinates: Empty geometry for resource r1", expected.getMessage());
+            }
+        }
+    }
+
+
+    private static void assertSerialized(String expected, Geometry geometry) throws Exception {
+
+        GeometrySerializer serializer = new GeometrySerializer(geometry, "r1");
+
+        StringWriter writer = new StringWriter();
+        serializer.write(writer);
+
+        assertEquals(expected, writer.toString());
+        assertEquals(expected, serializer.toJSONString());
+    }
+
+
+    private static Geometry createGeometry(GeometryType type, double[][][][] coordinates) {
+
+        Geometry geometry = new Geometry();
+        geometry.setType(type);
+        geometry.setCoordinates(coordinates);
+
+        return geometry;
+    }
+}